@@ -0,0 +1,163 @@
+package piu.gameplay;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * @author AAA
+ * Checks that painting a frame doesn't make any new objects once the game is running.
+ * A GameView plays a long synthetic chart into an offscreen image with scripted key presses, and the bytes allocated by
+ * this thread are measured over thousands of frames. The scores are exported too, since that happens every frame.
+ * This is done once drawing on this thread, once with two players drawn by a TiledRenderer, whose worker threads are measured as well,
+ * and once with a background animation which is loaded while the song plays. Loading the animation's frames makes new objects
+ * on its own threads, so for that only this thread is measured.
+ * The program exits with status 1 if any frame allocates anything
+ */
+public class AllocationTest {
+	// frames painted before measuring, so that everything is loaded, cached and compiled
+	private static final int WARM_UP_FRAMES = 20000;
+
+	// frames painted while measuring
+	private static final int MEASURED_FRAMES = 5000;
+
+	private static final int NUM_COLUMNS = 5;
+
+	/**
+	 * Plays the synthetic chart and measures the bytes allocated while painting
+	 * @param numPlayers the number of players
+	 * @param renderer the renderer to draw with, or null to draw on this thread
+	 * @param background the background art to show, or null for none
+	 * @return the bytes allocated over MEASURED_FRAMES frames, by this thread and the renderer's worker threads
+	 */
+	private static long measure(int numPlayers, TiledRenderer renderer, BackgroundArt background) throws IOException {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		int frames = WARM_UP_FRAMES + MEASURED_FRAMES;
+		GameView game = new GameView(numPlayers, WarmUp.syntheticChart(NUM_COLUMNS, frames * 20 + 10000));
+		game.setRenderer(renderer);
+		game.setSize(1500, 1000);
+		game.componentResized(null);
+		game.setBackgroundArt(background);
+		File scores = File.createTempFile("piu-scores", ".bin");
+		scores.deleteOnExit();
+		game.exportScores(scores);
+		BufferedImage image = new BufferedImage(1500, 1000, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+
+		// the key events are made up front, since making them isn't part of painting a frame
+		int numKeys = numPlayers * NUM_COLUMNS;
+		KeyEvent[] presses = new KeyEvent[numKeys];
+		KeyEvent[] releases = new KeyEvent[numKeys];
+		for (int i = 0; i < numKeys; i++) {
+			char key = GameView.INPUT_CHARACTERS.charAt(i);
+			presses[i] = new KeyEvent(game, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_UNDEFINED, key);
+			releases[i] = new KeyEvent(game, KeyEvent.KEY_RELEASED, 0, 0, KeyEvent.VK_UNDEFINED, key);
+		}
+
+		long before = 0;
+		long[] workers = null;
+		long[] workersBefore = null;
+		for (int frame = 0; frame < frames; frame++) {
+			if (frame == WARM_UP_FRAMES) {
+				// the worker threads have all started by now
+				workers = rendererThreads();
+				workersBefore = threads.getThreadAllocatedBytes(workers);
+				before = threads.getCurrentThreadAllocatedBytes();
+			}
+			// each column is held down for 5 frames out of every 13, so there are both hits and misses
+			for (int i = 0; i < numKeys; i++) {
+				int step = (frame + i * 3) % 13;
+				if (step == 0) {
+					game.keyPressed(presses[i]);
+				} else if (step == 5) {
+					game.keyReleased(releases[i]);
+				}
+			}
+			game.paintComponent(g);
+		}
+		long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+		long[] workersAfter = threads.getThreadAllocatedBytes(workers);
+		for (int i = 0; i < workers.length; i++) {
+			allocated += workersAfter[i] - workersBefore[i];
+		}
+		g.dispose();
+		game.shutdown();
+		return allocated;
+	}
+
+	/**
+	 * @return the ids of the TiledRenderers' worker threads
+	 */
+	private static long[] rendererThreads() {
+		List<Long> ids = new ArrayList<Long>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("tile-renderer")) {
+				ids.add(thread.getId());
+			}
+		}
+		long[] result = new long[ids.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ids.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Makes a background animation of one frame a second, long enough to last the whole chart, with small images so that
+	 * they are quick to write. The frames are still scaled to the size of the panel, so the cache fills up and old frames
+	 * are thrown away while new ones are loaded
+	 * @return the background art
+	 */
+	private static BackgroundArt makeBackground() throws IOException {
+		File directory = Files.createTempDirectory("piu-background").toFile();
+		directory.deleteOnExit();
+		List<File> files = new ArrayList<File>();
+		int seconds = (WARM_UP_FRAMES + MEASURED_FRAMES) * GameView.DELAY / 1000 + 10;
+		for (int i = 0; i < seconds; i++) {
+			BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+			image.setRGB(i % 16, i / 16 % 16, 0xFFFFFF);
+			File file = new File(directory, String.format("frame%04d.png", i));
+			ImageIO.write(image, "png", file);
+			file.deleteOnExit();
+			files.add(file);
+		}
+		return new BackgroundArt(files, 1, BackgroundArt.DEFAULT_CACHE_BYTES);
+	}
+
+	/**
+	 * Checks one way of painting, and prints the result
+	 * @return whether it passed
+	 */
+	private static boolean check(String name, int numPlayers, TiledRenderer renderer, BackgroundArt background) throws IOException {
+		long allocated = measure(numPlayers, renderer, background);
+		System.out.println(String.format("%s: %d bytes allocated over %d frames, %.3f bytes per frame", name, allocated, MEASURED_FRAMES,
+				(double) allocated / MEASURED_FRAMES));
+		// any allocation at all fails, however small it is when spread over the frames
+		return allocated == 0;
+	}
+
+	/**
+	 * Runs the check
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		boolean passed = check("event dispatch thread", 1, null, null);
+		passed &= check("tiled renderer", 2, new TiledRenderer(TiledRenderer.Mode.BANDS), null);
+		passed &= check("background art", 1, null, makeBackground());
+		if (!passed) {
+			System.out.println("FAILED: painting a frame allocated memory");
+			System.exit(1);
+		}
+		System.out.println("passed");
+		System.exit(0);
+	}
+}
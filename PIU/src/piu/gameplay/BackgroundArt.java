@@ -0,0 +1,288 @@
+package piu.gameplay;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.ImageIO;
+
+import piu.utilities.PIUFileReader;
+import piu.utilities.WorkerPool;
+
+/**
+ * BackgroundArt loads a song's background picture, or the frames of its background animation, on worker threads.
+ * Frames are decoded and scaled to the size of the panel ahead of the playhead, and kept in a cache which holds at most
+ * a fixed number of bytes. frameAt() never waits: it returns the frame if it is ready, an earlier frame if it isn't,
+ * or null if nothing has been loaded yet. When the panel is resized the cache is emptied, and frames which were
+ * being scaled to the old size are thrown away when they finish.
+ * The worker threads stay in a loop which looks for frames in the window ahead of the playhead, and are woken by
+ * frameAt() when there is one to load, so asking for frames doesn't make any new objects on the painting thread
+ * @author AAA
+ */
+public class BackgroundArt {
+	// the frame rate of background animations
+	public static final int DEFAULT_FPS = 30;
+
+	// the default most bytes of scaled frames kept at once
+	public static final long DEFAULT_CACHE_BYTES = 256L * 1024 * 1024;
+
+	// how far ahead of the playhead frames are loaded, in ms
+	private static final int PREFETCH_TIME = 2000;
+
+	// how far back from the playhead to look for a frame to show while the right one is loading
+	private static final int MAX_FALLBACK_FRAMES = 30;
+
+	// the values of _loading for frames which aren't being loaded
+	private static final int NOT_LOADING = -1;
+	private static final int FAILED = -2;
+
+	private final List<File> _files;
+	private final int _fps;
+	private final long _maxBytes;
+	private final ExecutorService _workers;
+	private final Loader[] _loaders;
+
+	// the scaled frames which are ready, with null for frames which aren't
+	private final AtomicReferenceArray<BufferedImage> _frames;
+	// the generation each frame is being loaded for, NOT_LOADING, or FAILED if the image couldn't be read
+	private final AtomicIntegerArray _loading;
+	// the number of bytes in _frames
+	private long _bytes = 0;
+
+	// goes up every time the size changes, so that frames scaled to an old size can be recognised
+	private volatile int _generation = 0;
+	private volatile int _width = 0;
+	private volatile int _height = 0;
+	
+	// the index of the frame which was last asked for, and the last frame which should be loaded ahead of it
+	private volatile int _playhead = 0;
+	private volatile int _prefetchEnd = -1;
+
+	/**
+	 * Creates the background art for a list of image files
+	 * @param files the frames of the animation in order, or a single picture
+	 * @param fps the frame rate of the animation
+	 * @param maxBytes the most bytes of scaled frames to keep at once
+	 */
+	public BackgroundArt(List<File> files, int fps, long maxBytes) {
+		if (files.isEmpty()) {
+			throw new IllegalArgumentException("Background art needs at least one image");
+		}
+		_files = new ArrayList<File>(files);
+		_fps = fps;
+		_maxBytes = maxBytes;
+		_frames = new AtomicReferenceArray<BufferedImage>(_files.size());
+		_loading = new AtomicIntegerArray(_files.size());
+		for (int i = 0; i < _files.size(); i++) {
+			_loading.set(i, NOT_LOADING);
+		}
+		int threads = Math.max(1, WorkerPool.cores() / 2);
+		_workers = WorkerPool.newPool("background-art", threads);
+		_loaders = new Loader[threads];
+		for (int i = 0; i < threads; i++) {
+			_loaders[i] = new Loader();
+			_workers.execute(_loaders[i]);
+		}
+	}
+
+	/**
+	 * @param song the name of the song
+	 * @return the song's background art, or null if it doesn't have any
+	 */
+	public static BackgroundArt forSong(String song) {
+		List<File> files = PIUFileReader.getBackgroundFiles(song);
+		return files.isEmpty() ? null : new BackgroundArt(files, DEFAULT_FPS, DEFAULT_CACHE_BYTES);
+	}
+
+	/**
+	 * Sets the size which frames are scaled to. This is called when the panel is resized, and empties the cache
+	 * @param width the width of the panel
+	 * @param height the height of the panel
+	 */
+	public synchronized void setSize(int width, int height) {
+		if (width == _width && height == _height) {
+			return;
+		}
+		_width = width;
+		_height = height;
+		_generation++;
+		for (int i = 0; i < _frames.length(); i++) {
+			_frames.set(i, null);
+		}
+		_bytes = 0;
+	}
+
+	/**
+	 * Gets the frame to show at a time, and starts loading the frames which come after it. This never waits for a frame to load
+	 * @param time the time in ms since the start of the song
+	 * @return the frame for that time if it is ready, otherwise the closest earlier frame which is ready, or null if there isn't one
+	 */
+	public Image frameAt(int time) {
+		if (_width <= 0 || _height <= 0) {
+			return null;
+		}
+		int index = frameIndex(time);
+		// don't load more frames ahead than the cache can hold, or they would push each other out
+		long framesInCache = Math.max(1, _maxBytes / (4L * _width * _height));
+		int last = (int) Math.min(Math.min(_frames.length() - 1, frameIndex(time + PREFETCH_TIME)), index + framesInCache - 1);
+		_playhead = index;
+		_prefetchEnd = last;
+		int generation = _generation;
+		for (int i = index; i <= last; i++) {
+			if (_frames.get(i) == null && _loading.get(i) != generation && _loading.get(i) != FAILED) {
+				// there is a frame for the loaders to load
+				for (Loader loader : _loaders) {
+					loader.wake();
+				}
+				break;
+			}
+		}
+		for (int i = index; i >= Math.max(0, index - MAX_FALLBACK_FRAMES); i--) {
+			BufferedImage frame = _frames.get(i);
+			if (frame != null) {
+				return frame;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown() {
+		_workers.shutdownNow();
+	}
+
+	/**
+	 * @param time the time in ms since the start of the song
+	 * @return the index of the frame shown at that time. The last frame stays up once the animation is over
+	 */
+	private int frameIndex(int time) {
+		return (int) Math.max(0, Math.min(_frames.length() - 1, (long) time * _fps / 1000));
+	}
+
+	/**
+	 * A Loader loads the frames ahead of the playhead which aren't ready and aren't already being loaded,
+	 * nearest first, and waits to be woken by frameAt() when there are none left
+	 */
+	private class Loader implements Runnable {
+		// the thread running this loader, or null if it hasn't started yet
+		private volatile Thread _thread;
+
+		@Override
+		public void run() {
+			_thread = Thread.currentThread();
+			while (!_workers.isShutdown()) {
+				if (!loadNext()) {
+					LockSupport.park(this);
+				}
+			}
+		}
+
+		/**
+		 * Wakes the loader up, if it has started; a loader which hasn't started yet looks for frames as soon as it does
+		 */
+		void wake() {
+			Thread thread = _thread;
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	/**
+	 * Loads the nearest frame ahead of the playhead which isn't ready and isn't already being loaded for the current size
+	 * @return whether a frame was found to load
+	 */
+	private boolean loadNext() {
+		// the size is set before the generation, so these are never older than the generation
+		int generation = _generation;
+		int width = _width;
+		int height = _height;
+		int last = _prefetchEnd;
+		for (int index = _playhead; index <= last; index++) {
+			int loading = _loading.get(index);
+			if (_frames.get(index) != null || loading == generation || loading == FAILED
+					|| !_loading.compareAndSet(index, loading, generation)) {
+				continue;
+			}
+			try {
+				BufferedImage scaled = scale(ImageIO.read(_files.get(index)), width, height);
+				store(index, scaled, generation);
+				_loading.compareAndSet(index, generation, NOT_LOADING);
+			} catch (IOException e) {
+				// don't try to load this frame again
+				_loading.set(index, FAILED);
+				e.printStackTrace();
+			} catch (RuntimeException e) {
+				_loading.set(index, FAILED);
+				e.printStackTrace();
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return a copy of the image scaled to the given size
+	 */
+	private static BufferedImage scale(BufferedImage image, int width, int height) throws IOException {
+		if (image == null) {
+			throw new IOException("Couldn't decode a background image");
+		}
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return scaled;
+	}
+
+	/**
+	 * Puts a scaled frame in the cache, unless the size has changed since it was started.
+	 * If the cache is then too big, the frames furthest from the playhead are removed
+	 * @param index the index of the frame
+	 * @param frame the scaled frame
+	 * @param generation the generation the frame was scaled for
+	 */
+	private synchronized void store(int index, BufferedImage frame, int generation) {
+		if (generation != _generation) {
+			return;
+		}
+		long frameBytes = 4L * frame.getWidth() * frame.getHeight();
+		_frames.set(index, frame);
+		_bytes += frameBytes;
+		while (_bytes > _maxBytes) {
+			// frames behind the playhead won't be needed again, so they are removed before frames ahead of it
+			int playhead = _playhead;
+			int furthest = -1;
+			int furthestDistance = -1;
+			for (int i = 0; i < _frames.length(); i++) {
+				if (_frames.get(i) != null) {
+					int distance = i < playhead ? (playhead - i) * 2 : i - playhead;
+					if (distance > furthestDistance) {
+						furthest = i;
+						furthestDistance = distance;
+					}
+				}
+			}
+			if (furthest == -1) {
+				break;
+			}
+			_frames.set(furthest, null);
+			_bytes -= frameBytes;
+		}
+	}
+}
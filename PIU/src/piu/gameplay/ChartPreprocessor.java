@@ -0,0 +1,151 @@
+package piu.gameplay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import piu.utilities.WorkerPool;
+
+/**
+ * The ChartPreprocessor cleans up note data when it is loaded, so that the Columns can rely on it being tidy.
+ * For every column it:
+ * sorts the periods by their start time,
+ * merges periods which overlap, including duplicates,
+ * turns periods shorter than a tick into single arrows, and rounds holds to a whole number of ticks,
+ * rounding down where rounding up would run into the next period,
+ * and records the index of the next period on each period.
+ * The columns are processed in parallel.
+ * All methods are static; this will never be instantiated
+ * @author AAA
+ */
+public class ChartPreprocessor {
+	// the length of a hold tick, in ms
+	private static final int TICK = Column.MAX_HOLD_ARROW_DENSITY;
+
+	// the threads which process the columns
+	private static final ExecutorService WORKERS = WorkerPool.newPool("chart-preprocessor");
+
+	// orders periods by start time, and then by end time
+	private static final Comparator<Period> BY_TIME = new Comparator<Period>() {
+		@Override
+		public int compare(Period a, Period b) {
+			if (a.start() != b.start()) {
+				return a.start() < b.start() ? -1 : 1;
+			}
+			return a.end() < b.end() ? -1 : (a.end() == b.end() ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The constructor is private and does nothing. It will never be called,
+	 * to ensure that this class is never instantiated
+	 */
+	private ChartPreprocessor() {}
+
+	/**
+	 * Cleans up the note data of a chart. The given lists aren't changed
+	 * @param noteData the note data, one list for each column
+	 * @return new note data, with new periods which have never been hit
+	 */
+	public static List<ArrayList<Period>> process(List<? extends List<Period>> noteData) {
+		List<Future<ArrayList<Period>>> columns = new ArrayList<Future<ArrayList<Period>>>();
+		for (final List<Period> column : noteData) {
+			columns.add(WORKERS.submit(new Callable<ArrayList<Period>>() {
+				@Override
+				public ArrayList<Period> call() {
+					return processColumn(column);
+				}
+			}));
+		}
+		List<ArrayList<Period>> output = new ArrayList<ArrayList<Period>>();
+		try {
+			for (Future<ArrayList<Period>> column : columns) {
+				output.add(column.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while preprocessing a chart", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to preprocess a chart", e.getCause());
+		}
+		return output;
+	}
+
+	/**
+	 * Copies note data which has already been processed, so that each player can have its own hit state
+	 * @param noteData the processed note data, one list for each column
+	 * @return new note data with the same periods, which have never been hit
+	 */
+	public static List<ArrayList<Period>> copy(List<? extends List<Period>> noteData) {
+		List<ArrayList<Period>> output = new ArrayList<ArrayList<Period>>();
+		for (List<Period> column : noteData) {
+			ArrayList<Period> copy = new ArrayList<Period>(column.size());
+			for (Period p : column) {
+				Period period = new Period(p.start(), p.end());
+				period.setNext(p.next());
+				copy.add(period);
+			}
+			output.add(copy);
+		}
+		return output;
+	}
+
+	/**
+	 * Sorts, merges, quantizes and annotates one column
+	 * @param column the periods of the column
+	 * @return the cleaned up periods
+	 */
+	static ArrayList<Period> processColumn(List<Period> column) {
+		List<Period> sorted = new ArrayList<Period>(column);
+		Collections.sort(sorted, BY_TIME);
+
+		// the periods are merged on the ends written in the chart, before any rounding, so that a hold rounded up
+		// can't swallow a separate note which starts just after it
+		List<Period> merged = new ArrayList<Period>(sorted.size());
+		for (Period p : sorted) {
+			int start = p.start();
+			int end = p.end();
+			if (!merged.isEmpty() && start < merged.get(merged.size() - 1).end()) {
+				// this period overlaps the last one, so they become one hold covering both
+				Period last = merged.remove(merged.size() - 1);
+				start = last.start();
+				end = Math.max(last.end(), end);
+			}
+			merged.add(new Period(start, end));
+		}
+
+		ArrayList<Period> output = new ArrayList<Period>(merged.size());
+		for (int i = 0; i < merged.size(); i++) {
+			int start = merged.get(i).start();
+			int end = quantizedEnd(start, merged.get(i).end());
+			if (i + 1 < merged.size() && end > merged.get(i + 1).start()) {
+				// rounding up went past the next period, so the hold is rounded down instead
+				end = quantizedEnd(start, start + (merged.get(i + 1).start() - start) / TICK * TICK);
+			}
+			output.add(new Period(start, end));
+		}
+		for (int i = 0; i < output.size(); i++) {
+			output.get(i).setNext(i + 1 < output.size() ? i + 1 : -1);
+		}
+		return output;
+	}
+
+	/**
+	 * @param start the start of a period
+	 * @param end the end of a period as written in the chart
+	 * @return the end of a single arrow if the period is shorter than a tick,
+	 * otherwise the end rounded to the nearest whole number of ticks
+	 */
+	private static int quantizedEnd(int start, int end) {
+		int duration = end - start;
+		if (duration < TICK) {
+			return start + 1;
+		}
+		return start + (duration + TICK / 2) / TICK * TICK;
+	}
+}
@@ -0,0 +1,56 @@
+package piu.gameplay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author AAA
+ * Checks how the ChartPreprocessor cleans up a column: that overlapping periods are merged, that holds are rounded
+ * to whole ticks, and that rounding a hold up never swallows the note after it.
+ * The program exits with status 1 if any case gives the wrong periods
+ */
+public class ChartPreprocessorTest {
+	private static boolean _passed = true;
+
+	/**
+	 * Processes a column and compares the result with the expected periods
+	 * @param name the name of the case
+	 * @param column the periods of the column, as start and end pairs
+	 * @param expected the periods expected after processing, as start and end pairs
+	 */
+	private static void check(String name, int[] column, int[] expected) {
+		List<Period> periods = new ArrayList<Period>();
+		for (int i = 0; i < column.length; i += 2) {
+			periods.add(new Period(column[i], column[i + 1]));
+		}
+		List<Period> output = ChartPreprocessor.processColumn(periods);
+		boolean matches = output.size() * 2 == expected.length;
+		for (int i = 0; matches && i < output.size(); i++) {
+			matches = output.get(i).start() == expected[i * 2] && output.get(i).end() == expected[i * 2 + 1];
+		}
+		System.out.println((matches ? "ok      " : "FAILED  ") + name + ": " + output);
+		_passed &= matches;
+	}
+
+	/**
+	 * Runs the checks
+	 */
+	public static void main(String[] args) {
+		check("taps are kept as they are", new int[] { 100, 101, 200, 201 }, new int[] { 100, 101, 200, 201 });
+		check("a short period becomes a tap", new int[] { 100, 110 }, new int[] { 100, 101 });
+		check("a hold is rounded to the nearest tick", new int[] { 0, 111, 500, 501 }, new int[] { 0, 120, 500, 501 });
+		check("duplicates are merged", new int[] { 100, 101, 100, 101 }, new int[] { 100, 101 });
+		check("overlapping holds are merged", new int[] { 0, 200, 100, 300 }, new int[] { 0, 300 });
+		check("a tap inside a hold is merged", new int[] { 0, 200, 100, 101 }, new int[] { 0, 200 });
+		// rounding 0-111 up to 0-120 would run past the tap at 115, so the hold is rounded down and the tap is kept
+		check("a hold rounded up into the next note", new int[] { 0, 111, 115, 116 }, new int[] { 0, 100, 115, 116 });
+		check("a hold rounded up into the next hold", new int[] { 0, 51, 55, 200 }, new int[] { 0, 40, 55, 195 });
+		check("a hold rounded down to one tick", new int[] { 0, 30, 35, 36 }, new int[] { 0, 20, 35, 36 });
+		if (!_passed) {
+			System.out.println("FAILED: the chart was cleaned up wrongly");
+			System.exit(1);
+		}
+		System.out.println("passed");
+		System.exit(0);
+	}
+}
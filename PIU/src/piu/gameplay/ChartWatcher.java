@@ -0,0 +1,254 @@
+package piu.gameplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import piu.utilities.PIUFileReader;
+
+/**
+ * A ChartWatcher watches a NoteData file while the game is running, so that changes to the chart can be seen without restarting.
+ * When the file changes it is read and preprocessed on the watcher's own thread, and diffed column by column against the
+ * periods each player has. Periods which haven't changed are kept, along with their judgement; only the changed ones are made again.
+ * The changes are queued, and the game applies them between frames with poll(). Applying a change swaps each column's list and finds
+ * its visible window again with a binary search, so it takes no time to speak of however long the chart is
+ * @author AAA
+ */
+public class ChartWatcher {
+	// how long the file has to stay unchanged before it is read, in ms, so that a file which is still being saved isn't read
+	private static final int SETTLE_TIME = 100;
+
+	private final File _file;
+	private final WatchService _watchService;
+	private final Thread _thread;
+	private final ConcurrentLinkedQueue<Change> _changes = new ConcurrentLinkedQueue<Change>();
+
+	// the periods of each player's columns after the last change was queued. Only used on the watcher's thread
+	private List<List<List<Period>>> _current = new ArrayList<List<List<Period>>>();
+
+	/**
+	 * A Change is the new periods of every player, with the periods which haven't changed carried over from before.
+	 * Changes have to be applied in the order they are polled
+	 */
+	public static class Change {
+		private final List<ArrayList<Period>> _noteData;
+		private final List<List<List<Period>>> _players;
+		// the periods which were kept but have moved in their column, and the new indices of the periods after them
+		private final List<Period> _moved;
+		private final int[] _next;
+		private final int _added;
+		private final int _removed;
+
+		Change(List<ArrayList<Period>> noteData, List<List<List<Period>>> players, List<Period> moved, int[] next, int added, int removed) {
+			_noteData = noteData;
+			_players = players;
+			_moved = moved;
+			_next = next;
+			_added = added;
+			_removed = removed;
+		}
+
+		/**
+		 * Gives the players their new periods. This must be called between frames, on the thread which updates the players
+		 * @param players the players, in the same order as when the watcher was made
+		 * @param timeElapsed the current time, in ms since the start of the song
+		 */
+		void apply(List<Player> players, int timeElapsed) {
+			for (int i = 0; i < _moved.size(); i++) {
+				_moved.get(i).setNext(_next[i]);
+			}
+			for (int i = 0; i < players.size(); i++) {
+				players.get(i).setNoteData(_players.get(i), timeElapsed);
+			}
+		}
+
+		/**
+		 * @return the new preprocessed note data, as it is in the file
+		 */
+		public List<ArrayList<Period>> noteData() {
+			return _noteData;
+		}
+
+		@Override
+		public String toString() {
+			return _added + " periods added and " + _removed + " removed";
+		}
+	}
+
+	/**
+	 * Starts watching a NoteData file. This must be called on the thread which updates the players, since their periods are read
+	 * @param file the NoteData file
+	 * @param players the players, whose periods are the ones the first change is diffed against
+	 * @throws IOException if the file's directory can't be watched
+	 */
+	public ChartWatcher(File file, List<Player> players) throws IOException {
+		_file = file.getAbsoluteFile();
+		for (Player p : players) {
+			List<List<Period>> columns = new ArrayList<List<Period>>();
+			for (int i = 0; i < p.numCols(); i++) {
+				columns.add(p.noteData(i));
+			}
+			_current.add(columns);
+		}
+		_watchService = FileSystems.getDefault().newWatchService();
+		_file.getParentFile().toPath().register(_watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		_thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "chart-watcher");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * @return the next change to apply, or null if there isn't one. This never blocks
+	 */
+	public Change poll() {
+		return _changes.poll();
+	}
+
+	/**
+	 * Stops watching the file
+	 */
+	public void shutdown() {
+		try {
+			_watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		_thread.interrupt();
+	}
+
+	/**
+	 * Waits for the file to change, and queues a change for each time it does, until the watcher is shut down
+	 */
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = _watchService.take();
+				boolean changed = isFileChanged(key);
+				// wait for the file to stop changing, since an editor may write it in several steps
+				while (changed && (key = _watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null) {
+					isFileChanged(key);
+				}
+				if (changed) {
+					try {
+						reload();
+					} catch (RuntimeException e) {
+						// a chart which can't be processed is left for the author to fix, like one which can't be read,
+						// and the file is still watched
+						System.out.println("Couldn't reload the chart: " + e);
+						e.printStackTrace();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// shut down
+		} catch (ClosedWatchServiceException e) {
+			// shut down
+		}
+	}
+
+	/**
+	 * @return whether any of the events of a key were about the file. The key is reset so that it gets more events
+	 */
+	private boolean isFileChanged(WatchKey key) {
+		boolean changed = false;
+		Path name = _file.toPath().getFileName();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (name.equals(event.context())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * Reads the file and queues the difference from the periods the players have. A file which can't be read,
+	 * or which has a different number of columns, is left for the author to fix
+	 */
+	private void reload() {
+		List<ArrayList<Period>> noteData;
+		try {
+			noteData = ChartPreprocessor.process(PIUFileReader.readNoteData(_file));
+		} catch (IOException e) {
+			System.out.println("Couldn't reload the chart: " + e.getMessage());
+			return;
+		}
+		if (!_current.isEmpty() && noteData.size() != _current.get(0).size()) {
+			System.out.println("Couldn't reload the chart: it has " + noteData.size() + " columns instead of " + _current.get(0).size());
+			return;
+		}
+
+		List<List<List<Period>>> players = new ArrayList<List<List<Period>>>();
+		List<Period> moved = new ArrayList<Period>();
+		List<Integer> next = new ArrayList<Integer>();
+		int added = 0;
+		int removed = 0;
+		for (List<List<Period>> player : _current) {
+			List<List<Period>> columns = new ArrayList<List<Period>>();
+			for (int i = 0; i < noteData.size(); i++) {
+				List<Period> old = player.get(i);
+				List<Period> updated = noteData.get(i);
+				List<Period> merged = new ArrayList<Period>(updated.size());
+				// both lists are sorted by start, so they can be walked together
+				int o = 0;
+				for (int u = 0; u < updated.size(); u++) {
+					Period p = updated.get(u);
+					while (o < old.size() && old.get(o).start() < p.start()) {
+						o++;
+						removed++;
+					}
+					int newNext = u + 1 < updated.size() ? u + 1 : -1;
+					if (o < old.size() && old.get(o).start() == p.start() && old.get(o).end() == p.end()) {
+						Period kept = old.get(o);
+						int oldNext = o + 1 < old.size() ? o + 1 : -1;
+						if (oldNext != newNext) {
+							moved.add(kept);
+							next.add(newNext);
+						}
+						merged.add(kept);
+						o++;
+					} else {
+						if (o < old.size() && old.get(o).start() == p.start()) {
+							// the same start with a different end; the old period is replaced
+							o++;
+							removed++;
+						}
+						Period fresh = new Period(p.start(), p.end());
+						fresh.setNext(newNext);
+						merged.add(fresh);
+						added++;
+					}
+				}
+				removed += old.size() - o;
+				columns.add(merged);
+			}
+			players.add(columns);
+		}
+		if (added == 0 && removed == 0) {
+			return;
+		}
+
+		int[] nextIndices = new int[next.size()];
+		for (int i = 0; i < nextIndices.length; i++) {
+			nextIndices[i] = next.get(i);
+		}
+		_current = players;
+		Change change = new Change(noteData, players, moved, nextIndices, added / Math.max(1, players.size()), removed / Math.max(1, players.size()));
+		_changes.add(change);
+	}
+}
@@ -3,20 +3,23 @@ import java.util.ArrayList;
 import java.util.List;
 /**
  * A Column does all the keystroke analysis and draws the board for the column
- * This is the abstract superclass for all columns. The subclasses define the
- * drawArrow() method, which determines how the column looks
+ * How the column looks is decided by its Layout.Panel, so there is one Column class for every kind of panel
  * @author AAA
  */
-abstract class Column {
+class Column {
 	// need to add the Player class. Refers to the player whom this column is for. The results of keystrokes are sent to this player.
 	private Player _player;
 	
-	//the arrow density drawn during a hold, 1 arrow per this many ms. This has a large effect on performance.
+	//the arrow density judged during a hold, 1 tick per this many ms. The arrows drawn along a hold are at most this dense,
+	//and are spaced further apart at lower qualities, which has a large effect on performance
 	static final int MAX_HOLD_ARROW_DENSITY = 20;
 	
 	//the maximum allowable distance from the actual arrow timing which will still give a positive result, in ms
 	static final int DISCREPANCY = 150;
 	
+	// returned by timingError() when there is no period to compare against
+	static final int NO_NOTE = Integer.MIN_VALUE;
+	
 	//font size to use
 	protected static final int FONT_SIZE = 100;
 	
@@ -32,7 +35,8 @@ abstract class Column {
 	//keeps track of whether the input key for this column is currently pressed or not
 	private boolean _inputOn = false;
 	
-	// holds all of the periods for the arrows, max frequency every 20ms. No overlapping periods
+	// holds all of the periods for the arrows, max frequency every 20ms. No overlapping periods.
+	// The ChartPreprocessor makes sure of this when the chart is loaded
 	private List<Period> _noteData = new ArrayList<Period>();
 	
 	// holds the index of the earliest arrow on the screen
@@ -41,20 +45,32 @@ abstract class Column {
 	// holds the index of the arrow AFTER the last arrow on the screen
 	private int _endIndex = 0;
 	
+	// holds the glyph, colour and position of this column
+	private Layout.Panel _panel;
+	
 	// holds the x position at which to draw the arrows
-	protected int _x;
+	private int _x;
 	
 	//holds the height of the screen
 	private int _height;
 	
+	// the global latency offset in ms, which is taken off the time before judging inputs
+	private int _offset = 0;
+
+	// the last time the inputs were judged at, or NO_NOTE if they haven't been since the column was made or seeked
+	private int _judgeTime = NO_NOTE;
+	
 	/**
 	 * @param times a list of Periods showing the times when arrows should appear
 	 * @param player the player whose column this is
+	 * @param inputChar the character which this column takes input for
+	 * @param panel how this column looks
 	 */
-	public Column(List<Period> noteData, Player player, char inputChar) {
+	public Column(List<Period> noteData, Player player, char inputChar, Layout.Panel panel) {
 		_noteData = noteData;
 		_player = player;
 		_inputChar = inputChar;
+		_panel = panel;
 	}
 	/**
 	* return the width of this column
@@ -75,12 +91,50 @@ abstract class Column {
 		return _inputChar;
 	}
 	/**
-	 * Called to paint the column check the results of inputs. The arrows are updated for their new position
+	 * return the panel which decides how this column looks
+	 */
+	Layout.Panel panel() {
+		return _panel;
+	}
+	/**
+	 * Called to paint the column check the results of inputs. The arrows are updated for their new position.
+	 * This is the same as calling update() and then draw()
 	 * @param painter painter used to paint the arrows
 	 * @param timeElapsed the time elapsed since the song began
 	 */
 	void advance(GraphicsPainter painter, int timeElapsed) {
-		setUpPainter(painter);
+		update(timeElapsed);
+		draw(painter, timeElapsed, MAX_HOLD_ARROW_DENSITY);
+	}
+	
+	/**
+	 * Moves the visible window forward and checks the results of inputs. Nothing is drawn.
+	 * The inputs are judged every MAX_HOLD_ARROW_DENSITY ms from the first update after the column was made or seeked,
+	 * once for every one of those times which the clock has passed since the last update. At playback rates other than 1
+	 * the clock moves more or less than that between frames, and this way the same ticks are judged at the same times
+	 * as when it moves one DELAY a frame, so the rate never changes the judgement.
+	 * This must only ever be called from one thread at a time
+	 * @param timeElapsed the time elapsed since the song began
+	 */
+	void update(int timeElapsed) {
+		if (_judgeTime == NO_NOTE || timeElapsed < _judgeTime) {
+			_judgeTime = timeElapsed;
+			judge(timeElapsed);
+			return;
+		}
+		while (_judgeTime + MAX_HOLD_ARROW_DENSITY <= timeElapsed) {
+			_judgeTime += MAX_HOLD_ARROW_DENSITY;
+			judge(_judgeTime);
+		}
+	}
+
+	/**
+	 * Moves the visible window forward and checks the results of inputs at one time
+	 * @param timeElapsed the time elapsed since the song began
+	 */
+	private void judge(int timeElapsed) {
+		// inputs are judged against the time the player saw, which is the offset behind the game clock
+		int judgeTime = timeElapsed - _offset;
 		// screenBottomTime is the number of ms from the start of the song at which arrows at the bottom of the screen will appear
 		// e.g. if the time elapsed is 1000ms and the SCROLL_SPEED is 500ms then the arrows from 1500ms and earlier will have reached the screen
 		int screenBottomTime = timeElapsed + SCROLL_SPEED;
@@ -94,14 +148,14 @@ abstract class Column {
 		}
 		// if the ending time of the next arrow is less than the time elapsed + the time margin to the top of the screen,
 		// then it should be off the screen by now and we don't need to draw it
-		if (_startIndex < _noteData.size() &&_noteData.get(_startIndex).end() < timeElapsed + UPPER_BUFFER / _height * SCROLL_SPEED) {
+		if (_startIndex < _noteData.size() &&_noteData.get(_startIndex).end() < windowStartTime(timeElapsed)) {
 			_startIndex++;
 		}
 		
 		if (_inputOn) {
 			// check if a note has been hit
 			int index = _startIndex;
-			while (index < _endIndex && !_noteData.get(index).hit(timeElapsed)) {
+			while (index < _endIndex && !_noteData.get(index).hit(judgeTime)) {
 				index++;
 			}
 			// if a note has been hit, notify the player
@@ -109,52 +163,164 @@ abstract class Column {
 				_player.noteHit();
 			}
 		}
-		// check if a note has been missed
+		// check if a note has been missed. Only the tick which is DISCREPANCY old is checked, and only if it is part of the period;
+		// once a period is over there is nothing left in it to miss
 		int index = _startIndex;
-		while (index < _endIndex && _noteData.get(index).start() < timeElapsed - DISCREPANCY) {
-			if (!_noteData.get(index).isHit(timeElapsed - DISCREPANCY)) {
+		while (index < _endIndex && _noteData.get(index).start() < judgeTime - DISCREPANCY) {
+			if (_noteData.get(index).covers(judgeTime - DISCREPANCY) && !_noteData.get(index).isHit(judgeTime - DISCREPANCY)) {
 				// if this note hasn't been hit yet, notify the player that it's been missed
 				_player.noteMissed();
 				// hit the note just in case it might get checked again (but it shouldn't)
-				_noteData.get(index).hit(timeElapsed - DISCREPANCY);
+				_noteData.get(index).hit(judgeTime - DISCREPANCY);
 				break;
 			}
 			index++;
 		}
-		// for each arrow which is currently on the screen, draw it for the entire duration which it exists for
-		for (int i = _startIndex; i < _endIndex; i++) {
-			Period currentPeriod = _noteData.get(i);
-			// for the whole period, draw as if there was an arrow every MAX_HOLD_ARROW_DENSITYms
-			for (int j = currentPeriod.start(); j < currentPeriod.end(); j += MAX_HOLD_ARROW_DENSITY) {
-				drawArrow(_height * (j-timeElapsed)/SCROLL_SPEED, painter);
+	}
+	
+	/**
+	 * @param timeElapsed the time elapsed since the song began
+	 * @return the time before which periods can leave the window. This is when arrows leave the top of the screen,
+	 * but a period is kept until it is DISCREPANCY old, so that it can't leave before it has been checked for a miss
+	 */
+	private int windowStartTime(int timeElapsed) {
+		// before the first resize there is no height, so nothing above the header arrows is kept
+		int screenTopTime = _height == 0 ? timeElapsed : timeElapsed + UPPER_BUFFER / _height * SCROLL_SPEED;
+		return Math.min(screenTopTime, timeElapsed - _offset - DISCREPANCY);
+	}
+	
+	/**
+	 * Moves the visible window straight to a new time, forwards or backwards. The periods are sorted and
+	 * never overlap, so both their starts and ends are in order and the window can be found with a binary search.
+	 * This takes logarithmic time however long the chart is. The judgement of the notes isn't changed
+	 * @param timeElapsed the time to move to, in ms since the song began
+	 */
+	void seek(int timeElapsed) {
+		// the time seeked over isn't judged
+		_judgeTime = NO_NOTE;
+		_startIndex = firstEndingAtOrAfter(windowStartTime(timeElapsed));
+		_endIndex = Math.max(_startIndex, firstStartingAtOrAfter(timeElapsed + SCROLL_SPEED));
+	}
+	
+	/**
+	 * @return the periods of this column. The list must not be changed
+	 */
+	List<Period> noteData() {
+		return _noteData;
+	}
+	
+	/**
+	 * Swaps in new periods for this column, keeping the time. The visible window is found again with a binary search,
+	 * so this takes logarithmic time however long the chart is. Periods which are in both lists keep their judgement
+	 * @param noteData the new periods, sorted and preprocessed
+	 * @param timeElapsed the current time, in ms since the song began
+	 */
+	void setNoteData(List<Period> noteData, int timeElapsed) {
+		_noteData = noteData;
+		seek(timeElapsed);
+	}
+	
+	/**
+	 * @param time the time of a press, in ms since the song began
+	 * @return the time of the press minus the start of the nearest period, or NO_NOTE if this column has no periods
+	 */
+	int timingError(int time) {
+		int after = firstStartingAtOrAfter(time);
+		int error = NO_NOTE;
+		if (after < _noteData.size()) {
+			error = time - _noteData.get(after).start();
+		}
+		if (after > 0 && (error == NO_NOTE || time - _noteData.get(after - 1).start() < -error)) {
+			error = time - _noteData.get(after - 1).start();
+		}
+		return error;
+	}
+	
+	/**
+	 * Sets the global latency offset, which is taken off the time before judging inputs
+	 * @param offset the offset in ms. A positive offset means presses arrive late
+	 */
+	void setOffset(int offset) {
+		_offset = offset;
+	}
+	
+	/**
+	 * Forgets whether the notes in a range of time have been hit, so that they can be played again
+	 * @param from the start of the range, in ms since the song began
+	 * @param to the end of the range, in ms since the song began
+	 */
+	void resetJudgement(int from, int to) {
+		for (int i = firstEndingAtOrAfter(from); i < _noteData.size() && _noteData.get(i).start() < to; i++) {
+			_noteData.get(i).reset();
+		}
+	}
+	
+	/**
+	 * @param time the time to search for
+	 * @return the index of the first period whose end is at or after time, or the number of periods if there isn't one
+	 */
+	private int firstEndingAtOrAfter(int time) {
+		int low = 0;
+		int high = _noteData.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (_noteData.get(middle).end() < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
 			}
 		}
-		restorePainter(painter);
+		return low;
 	}
 	
 	/**
-	 * Called to draw an arrow of this class. Its look must be specified by each subclass individually
-	 * @param y the y position of the arrow
-	 * @param painter the painter used to draw the arrow
+	 * @param time the time to search for
+	 * @return the index of the first period whose start is at or after time, or the number of periods if there isn't one
 	 */
-	abstract protected void drawArrow(int y, GraphicsPainter painter);
+	private int firstStartingAtOrAfter(int time) {
+		int low = 0;
+		int high = _noteData.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (_noteData.get(middle).start() < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
 	
 	/**
-	 * Set up the painter for this column.
-	 * Anything defined here will be called by every column, but they also each have their own definitions as well
-	 * @param painter the painter which is being setup
+	 * Draws the arrows which are currently on the screen. This doesn't change the state of the column,
+	 * so several threads may draw the same column at once as long as each has its own painter.
+	 * The painter's colour and font aren't touched; the Player sets them up once for all the columns which share them
+	 * @param painter painter used to paint the arrows
+	 * @param timeElapsed the time elapsed since the song began
+	 * @param holdSpacing the time between the arrows drawn along a hold, a whole number of MAX_HOLD_ARROW_DENSITY
 	 */
-	protected void setUpPainter(GraphicsPainter painter) {
-		painter.setFontSize(FONT_SIZE);
+	void draw(GraphicsPainter painter, int timeElapsed, int holdSpacing) {
+		// for each arrow which is currently on the screen, draw it for the entire duration which it exists for
+		for (int i = _startIndex; i < _endIndex; i++) {
+			Period currentPeriod = _noteData.get(i);
+			int start = currentPeriod.start();
+			// the last tick of the period is always drawn, so the hold is as long as it is at any spacing
+			int last = start + (currentPeriod.end() - 1 - start) / MAX_HOLD_ARROW_DENSITY * MAX_HOLD_ARROW_DENSITY;
+			// for the whole period, draw as if there was an arrow every holdSpacing ms
+			for (int j = start; j < last; j += holdSpacing) {
+				drawArrow(_height * (j-timeElapsed)/SCROLL_SPEED, painter);
+			}
+			drawArrow(_height * (last-timeElapsed)/SCROLL_SPEED, painter);
+		}
 	}
 	
 	/**
-	 * Restore up the painter for this column, and restore the painter to the original state.
-	 * Anything defined here will be called by every column, but they also each have their own definitions as well
-	 * @param painter the painter which is being restored
+	 * Called to draw an arrow of this column, using the glyph of its panel
+	 * @param y the y position of the arrow
+	 * @param painter the painter used to draw the arrow
 	 */
-	protected void restorePainter(GraphicsPainter painter) {
-		
+	private void drawArrow(int y, GraphicsPainter painter) {
+		painter.drawText(_panel.glyph(), _x, y);
 	}
 	
 	/**
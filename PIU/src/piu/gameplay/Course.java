@@ -0,0 +1,145 @@
+package piu.gameplay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import piu.utilities.PIUFileReader;
+import piu.utilities.WorkerPool;
+
+/**
+ * A Course is a queue of songs which are played back to back, as in a nonstop or marathon course.
+ * While one song is playing, the next one is read, preprocessed and copied for every player on a background thread,
+ * so that when the song ends the GameView can switch to the next chart between two frames without waiting for anything.
+ * Only the chart being played and the one after it are ever held, so the memory used doesn't grow with the length of the course
+ * @author AAA
+ */
+public class Course {
+	private final List<String> _songs;
+	private final int _numPlayers;
+	private final ExecutorService _loader = WorkerPool.newPool("course-loader", 1);
+	// the index of the next song to load, and the song being loaded, or null if there are no more songs
+	private int _nextSong = 0;
+	private Future<Chart> _next = null;
+
+	/**
+	 * A Chart is a song which is ready to play: its preprocessed note data, a copy of it for each player, and its background art
+	 */
+	public static class Chart {
+		private final String _song;
+		private final List<ArrayList<Period>> _noteData;
+		private final List<List<ArrayList<Period>>> _copies;
+		private final BackgroundArt _background;
+
+		Chart(String song, List<ArrayList<Period>> noteData, List<List<ArrayList<Period>>> copies, BackgroundArt background) {
+			_song = song;
+			_noteData = noteData;
+			_copies = copies;
+			_background = background;
+		}
+
+		/**
+		 * @return the name of the song
+		 */
+		public String song() {
+			return _song;
+		}
+
+		/**
+		 * @return the preprocessed note data of the song
+		 */
+		public List<ArrayList<Period>> noteData() {
+			return _noteData;
+		}
+
+		/**
+		 * @param player the index of the player
+		 * @return the player's own copy of the note data
+		 */
+		List<ArrayList<Period>> copy(int player) {
+			return _copies.get(player);
+		}
+
+		/**
+		 * @return the song's background art, or null if it doesn't have any
+		 */
+		public BackgroundArt background() {
+			return _background;
+		}
+	}
+
+	/**
+	 * Creates a course and starts loading its first song
+	 * @param songs the names of the songs, in the order they are played
+	 * @param numPlayers the number of players, each of whom gets their own copy of every chart
+	 */
+	public Course(List<String> songs, int numPlayers) {
+		_songs = new ArrayList<String>(songs);
+		_numPlayers = numPlayers;
+		loadNext();
+	}
+
+	/**
+	 * Starts loading the next song in the background, if there is one
+	 */
+	private void loadNext() {
+		if (_nextSong >= _songs.size()) {
+			_next = null;
+			return;
+		}
+		final String song = _songs.get(_nextSong++);
+		_next = _loader.submit(new Callable<Chart>() {
+			@Override
+			public Chart call() throws Exception {
+				List<ArrayList<Period>> noteData = ChartPreprocessor.process(PIUFileReader.readNoteData(PIUFileReader.noteDataFile(song)));
+				List<List<ArrayList<Period>>> copies = new ArrayList<List<ArrayList<Period>>>();
+				for (int i = 0; i < _numPlayers; i++) {
+					copies.add(ChartPreprocessor.copy(noteData));
+				}
+				return new Chart(song, noteData, copies, BackgroundArt.forSong(song));
+			}
+		});
+	}
+
+	/**
+	 * @return whether there are any songs left to play
+	 */
+	public boolean hasNext() {
+		return _next != null;
+	}
+
+	/**
+	 * Takes the next song if it has finished loading, and starts loading the one after it. This never blocks.
+	 * A song which can't be loaded is skipped
+	 * @return the next song, or null if it is still loading or there are no songs left
+	 */
+	public Chart takeIfReady() {
+		while (_next != null && _next.isDone()) {
+			Future<Chart> done = _next;
+			loadNext();
+			try {
+				return done.get();
+			} catch (ExecutionException e) {
+				System.out.println("Skipping a song of the course which couldn't be loaded: " + e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops loading songs
+	 */
+	public void shutdown() {
+		if (_next != null) {
+			_next.cancel(true);
+			_next = null;
+		}
+		_loader.shutdownNow();
+	}
+}
@@ -0,0 +1,245 @@
+package piu.gameplay;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import piu.utilities.PIUFileReader;
+import piu.utilities.WorkerPool;
+
+/**
+ * A FrameExporter draws a chart into a numbered sequence of PNG files at a fixed frame rate, without opening a window.
+ * Drawing a frame only depends on the time of the frame, so the frames are drawn in parallel: each render thread has
+ * its own players, which it seeks straight to the time of each frame. The finished images are handed to a separate
+ * pool of encoder threads which write the PNG files, and the images are then reused for later frames
+ * @author AAA
+ */
+public class FrameExporter {
+	// the number of frames a render thread draws before taking the next chunk, so that seeking is mostly forwards
+	private static final int CHUNK_SIZE = 30;
+
+	private final List<ArrayList<Period>> _noteData;
+	private final int _numPlayers;
+	private final int _width;
+	private final int _height;
+	private final int _fps;
+	private Color _background = Color.WHITE;
+
+	/**
+	 * Creates a new FrameExporter
+	 * @param noteData the note data of the chart, one list for each column
+	 * @param numPlayers the number of players to draw side by side
+	 * @param width the width of each frame
+	 * @param height the height of each frame
+	 * @param fps the number of frames for every second of the song
+	 */
+	public FrameExporter(List<ArrayList<Period>> noteData, int numPlayers, int width, int height, int fps) {
+		if (width <= 0 || height <= 0 || fps <= 0 || numPlayers <= 0) {
+			throw new IllegalArgumentException("The size, frame rate and number of players must all be positive");
+		}
+		_noteData = noteData;
+		_numPlayers = numPlayers;
+		_width = width;
+		_height = height;
+		_fps = fps;
+	}
+
+	/**
+	 * @param background the colour drawn behind the arrows
+	 */
+	public void setBackground(Color background) {
+		_background = background;
+	}
+
+	/**
+	 * Draws every frame from one time to another and writes them to a directory as frame000000.png, frame000001.png and so on
+	 * @param directory the directory to write the frames to
+	 * @param from the time of the first frame, in ms since the start of the song
+	 * @param to the time after the last frame, in ms since the start of the song
+	 * @return the number of frames written
+	 * @throws IOException if a frame couldn't be written
+	 * @throws InterruptedException if the export was interrupted
+	 */
+	public int export(File directory, int from, int to) throws IOException, InterruptedException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create the directory " + directory);
+		}
+		int frames = (int) ((long) Math.max(0, to - from) * _fps / 1000);
+		int renderThreads = Math.max(1, WorkerPool.cores() - 1);
+		int encodeThreads = Math.max(1, WorkerPool.cores() / 2);
+
+		// the images are reused; when they have all been handed to the encoders, the render threads wait for one to come back
+		BlockingQueue<BufferedImage> images = new ArrayBlockingQueue<BufferedImage>(2 * (renderThreads + encodeThreads));
+		while (images.remainingCapacity() > 0) {
+			images.add(new BufferedImage(_width, _height, BufferedImage.TYPE_INT_RGB));
+		}
+
+		ExecutorService renderers = WorkerPool.newPool("frame-renderer", renderThreads);
+		ExecutorService encoders = WorkerPool.newPool("frame-encoder", encodeThreads);
+		ConcurrentLinkedQueue<Future<Void>> encoded = new ConcurrentLinkedQueue<Future<Void>>();
+		AtomicInteger nextChunk = new AtomicInteger();
+		List<Callable<Void>> renderTasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < renderThreads; i++) {
+			renderTasks.add(new Render(directory, from, frames, nextChunk, images, encoders, encoded));
+		}
+		try {
+			for (Future<Void> f : renderers.invokeAll(renderTasks)) {
+				f.get();
+			}
+			for (Future<Void> f : encoded) {
+				f.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to export a frame", e.getCause());
+		} finally {
+			renderers.shutdownNow();
+			encoders.shutdownNow();
+		}
+		return frames;
+	}
+
+	/**
+	 * @param frame the number of the frame
+	 * @param from the time of the first frame
+	 * @return the time of the frame in ms since the start of the song
+	 */
+	private int frameTime(int frame, int from) {
+		return from + (int) ((long) frame * 1000 / _fps);
+	}
+
+	/**
+	 * Draws all the players at one time into an image
+	 */
+	private void drawFrame(List<Player> players, BufferedImage image, int time) {
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setColor(_background);
+			g.fillRect(0, 0, _width, _height);
+			GraphicsPainter painter = new GraphicsPainter(g);
+			for (Player p : players) {
+				p.seek(time);
+				p.draw(painter, time);
+			}
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * A Render task takes chunks of frames until there are none left, draws them, and passes them on to be encoded
+	 */
+	private class Render implements Callable<Void> {
+		private final File _directory;
+		private final int _from;
+		private final int _frames;
+		private final AtomicInteger _nextChunk;
+		private final BlockingQueue<BufferedImage> _images;
+		private final ExecutorService _encoders;
+		private final ConcurrentLinkedQueue<Future<Void>> _encoded;
+
+		Render(File directory, int from, int frames, AtomicInteger nextChunk, BlockingQueue<BufferedImage> images,
+				ExecutorService encoders, ConcurrentLinkedQueue<Future<Void>> encoded) {
+			_directory = directory;
+			_from = from;
+			_frames = frames;
+			_nextChunk = nextChunk;
+			_images = images;
+			_encoders = encoders;
+			_encoded = encoded;
+		}
+
+		@Override
+		public Void call() throws InterruptedException {
+			// every render thread has its own players, since seeking changes their columns
+			List<Player> players = new ArrayList<Player>();
+			int playerWidth = _width / _numPlayers;
+			for (int i = 0; i < _numPlayers; i++) {
+				Player player = new Player(_noteData, GameView.INPUT_CHARACTERS.substring(0, _noteData.size()));
+				player.updateSize(playerWidth, _height, playerWidth * i);
+				players.add(player);
+			}
+			int chunk;
+			while ((chunk = _nextChunk.getAndIncrement() * CHUNK_SIZE) < _frames) {
+				for (int frame = chunk; frame < Math.min(_frames, chunk + CHUNK_SIZE); frame++) {
+					BufferedImage image = _images.take();
+					drawFrame(players, image, frameTime(frame, _from));
+					_encoded.add(_encoders.submit(new Encode(new File(_directory, String.format("frame%06d.png", frame)), image, _images)));
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * An Encode task writes one image to a PNG file and then gives the image back to be reused
+	 */
+	private static class Encode implements Callable<Void> {
+		private final File _file;
+		private final BufferedImage _image;
+		private final BlockingQueue<BufferedImage> _images;
+
+		Encode(File file, BufferedImage image, BlockingQueue<BufferedImage> images) {
+			_file = file;
+			_image = image;
+			_images = images;
+		}
+
+		@Override
+		public Void call() throws IOException {
+			try {
+				if (!ImageIO.write(_image, "png", _file)) {
+					throw new IOException("There is no PNG writer available");
+				}
+			} finally {
+				_images.add(_image);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Exports a song without opening a window.
+	 * The arguments are: song [fps] [width] [height] [output directory]
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 1) {
+			System.out.println("usage: FrameExporter song [fps] [width] [height] [output directory]");
+			return;
+		}
+		String song = args[0];
+		int fps = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		int width = args.length > 2 ? Integer.parseInt(args[2]) : 1500;
+		int height = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+		File directory = new File(args.length > 4 ? args[4] : song + "Frames");
+
+		List<ArrayList<Period>> noteData = ChartPreprocessor.process(PIUFileReader.getNoteData(song));
+		// export until the last arrow has gone past the top of the screen
+		int end = 0;
+		for (List<Period> column : noteData) {
+			if (!column.isEmpty()) {
+				end = Math.max(end, column.get(column.size() - 1).end());
+			}
+		}
+		long startTime = System.nanoTime();
+		int frames = new FrameExporter(noteData, 1, width, height, fps).export(directory, 0, end + Column.DISCREPANCY);
+		System.out.println("Exported " + frames + " frames to " + directory + " in " + (System.nanoTime() - startTime) / 1000000 + "ms");
+	}
+}
@@ -1,13 +1,17 @@
 package piu.gameplay;
 
 import java.awt.Graphics;
+import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.swing.JFrame;
@@ -32,10 +36,10 @@ import piu.utilities.PIUFileReader;
 @SuppressWarnings("serial")
 public class GameView extends JPanel implements ActionListener, ComponentListener, KeyListener {
 	// Frequency in milliseconds for the Timer to generate events. This has a large effect on performance.
-	private static final int DELAY = 20;
+	static final int DELAY = 20;
 	
 	// the list of possible input characters which could be used by the players' columns, up to 71 total columns supported
-	private static final String INPUT_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890`-=[];',.";
+	static final String INPUT_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890`-=[];',.";
 
 	// list of players
 	private List<Player> _players = new ArrayList<Player>();
@@ -47,6 +51,68 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 	
 	// The amount of time elapsed since the timer was started
 	private int _timeElapsed = 0;
+	
+	// draws the players using several threads, or null to draw them on the event dispatch thread
+	private TiledRenderer _renderer = null;
+	
+	// the practice settings, or null if this isn't a practice session
+	private PracticeMode _practice = null;
+	
+	// how far the practice keys seek, in ms
+	private static final int SEEK_STEP = 5000;
+
+	// printed by main() when it is given an argument it doesn't know
+	private static final String USAGE = "Arguments: [bands|players] [practice] [calibrate] [autooffset] [course=song1,song2,...]"
+			+ " [export] [warmup|warmup=frames] [adaptive]";
+	
+	// the preprocessed note data of the song, and the time at which its last period ends
+	private List<ArrayList<Period>> _noteData;
+	private int _chartEnd = 0;
+	
+	// records the input of this session, or null if it isn't being recorded
+	private ReplayRecorder _recorder = null;
+	
+	// the song's background art, or null if it doesn't have any
+	private BackgroundArt _background = null;
+	
+	// the painter used for every frame. It is reused so that painting a frame doesn't make any new objects
+	private final GraphicsPainter _painter = new GraphicsPainter();
+	
+	// the latency offset subtracted from the time used for judgement, in ms
+	private int _offset = 0;
+	
+	// collects the timing errors of presses, or null if they aren't being collected, and whether this is a calibration session
+	private LatencyCalibration _calibration = null;
+	private boolean _calibrating = false;
+	
+	// when the last frame was painted, from System.nanoTime(), so that presses can be timed more finely than the frames
+	private long _lastFrameNanos = System.nanoTime();
+	
+	// whether each column's key is held down, across all the players, so that repeated presses from a held key aren't timed
+	private boolean[] _held;
+	
+	// whether the song has ended
+	private boolean _finished = false;
+	
+	// watches the chart for changes while the game is running, or null if it isn't being watched
+	private ChartWatcher _watcher = null;
+	
+	// the songs still to come when playing a course, or null if this isn't a course
+	private Course _course = null;
+	
+	// publishes the players' scores every frame for other programs to read, or null if they aren't being published
+	private ScoreExporter _exporter = null;
+	
+	// the times taken to paint the first frames of the song, in ns, and how many have been painted, or null if they aren't being timed
+	private long[] _firstFrameTimes = null;
+	private int _firstFrameCount = 0;
+	
+	// the warm-up run before the song started, or null if there wasn't one
+	private WarmUp _warmUp = null;
+	
+	// how detailed the drawing is, and the governor which changes it to keep frames inside their time, or null if it is fixed
+	private QualityGovernor.Quality _quality = QualityGovernor.Quality.NORMAL;
+	private QualityGovernor _governor = null;
 	/**
 	 * Creates an GameView instance with a list of Player objects and
 	 * starts the animation.
@@ -54,12 +120,28 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 	 * @param song the name of the song
 	 */
 	public GameView(int numPlayers, String song) {
-		List<ArrayList<Period>> noteData = PIUFileReader.getNoteData(song);
+		// sort and tidy up the note data before any of it is used
+		this(numPlayers, ChartPreprocessor.process(PIUFileReader.getNoteData(song)));
+		// the background art is loaded on worker threads once the size of the panel is known
+		setBackgroundArt(BackgroundArt.forSong(song));
+	}
+
+	/**
+	 * Creates an GameView instance for note data which has already been loaded and preprocessed,
+	 * and starts the animation.
+	 * @param numPlayers the number of players
+	 * @param noteData the note data of the song, one list for each column
+	 */
+	public GameView(int numPlayers, List<ArrayList<Period>> noteData) {
+		_noteData = noteData;
+		_chartEnd = chartEnd(noteData);
 		// get the number of columns each player has
-		_numCols = noteData.get(0).size();
+		_numCols = noteData.size();
+		_held = new boolean[_numCols * numPlayers];
 		for (int i = 0; i < numPlayers; i++) {
-			// give each player the same noteData and its set of input characters
-			_players.add(new Player(noteData, INPUT_CHARACTERS.substring(i, i+_numCols)));
+			// give each player its own copy of the noteData, so that one player's hits don't count for the others,
+			// and its set of input characters; the layout is chosen from the number of columns
+			_players.add(new Player(ChartPreprocessor.copy(noteData), INPUT_CHARACTERS.substring(i*_numCols, (i+1)*_numCols)));
 		}
 		componentResized(null);
 		// Start the animation.
@@ -71,22 +153,499 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 	 * should be repainted. This can happen, for example, after an explicit
 	 * repaint() call or after the window that contains this GameView
 	 * object has been opened, exposed or moved.
+	 * Once the game is running, painting a frame doesn't make any new objects, with or without a TiledRenderer,
+	 * so it never causes garbage collection
 	 *
 	 */
 	@Override
 	public void paintComponent(Graphics g) {
-		// Call inherited implementation to handle background painting.
-		super.paintComponent(g);
+		_lastFrameNanos = System.nanoTime();
+		// changes to the chart, and the next song of a course, are only ever applied here, between frames
+		if (_watcher != null) {
+			applyChartChanges();
+		}
+		if (_course != null && _finished) {
+			nextCourseSong();
+		}
+		// Handle background painting. This does the same as the inherited implementation,
+		// which makes a new Graphics object every frame
+		if (isOpaque()) {
+			g.setColor(getBackground());
+			g.fillRect(0, 0, getWidth(), getHeight());
+		}
+		// the background art is only drawn if it's ready; it is never waited for
+		Image background = _background == null || !_quality.background() ? null : _background.frameAt(_timeElapsed);
 
-		// Create a GraphicsPainter that Shape objects will use for drawing.
+		if (_renderer != null) {
+			// the renderer checks the inputs and then draws the background and the players on its worker threads
+			_renderer.render(g, _players, _timeElapsed, getWidth(), getHeight(), getBackground(), background);
+			endFrame();
+			return;
+		}
+
+		if (background != null) {
+			g.drawImage(background, 0, 0, null);
+		}
+
+		// Point the GraphicsPainter that Shape objects will use for drawing at this frame's Graphics.
 		// The GraphicsPainter delegates painting to a basic Graphics object.
-		GraphicsPainter painter = new GraphicsPainter(g);
+		_painter.setGraphics(g);
 
 		// Progress the animation.
-		for(Player s : _players) {
-			s.advance(painter, _timeElapsed);
+		for (int i = 0; i < _players.size(); i++) {
+			_players.get(i).advance(_painter, _timeElapsed);
+		}
+		endFrame();
+	}
+
+	/**
+	 * Called once the frame has been drawn: publishes the scores, times the frame and moves the clock on
+	 */
+	private void endFrame() {
+		if (_exporter != null) {
+			_exporter.publish(_timeElapsed, _players);
+		}
+		long frameTime = System.nanoTime() - _lastFrameNanos;
+		if (_governor != null) {
+			QualityGovernor.Quality quality = _governor.frame(frameTime);
+			if (quality != _quality) {
+				setQuality(quality);
+				System.out.println("Drawing at " + quality + " quality");
+			}
+		}
+		if (_firstFrameTimes != null) {
+			_firstFrameTimes[_firstFrameCount++] = frameTime;
+			if (_firstFrameCount == _firstFrameTimes.length) {
+				reportFirstFrames();
+			}
 		}
-		_timeElapsed += DELAY;
+		advanceClock();
+	}
+
+	/**
+	 * Sets how detailed the drawing is. This only changes how the game looks; the judgement is the same at every quality
+	 * @param quality the quality to draw at
+	 */
+	public void setQuality(QualityGovernor.Quality quality) {
+		_quality = quality;
+		for (int i = 0; i < _players.size(); i++) {
+			_players.get(i).setQuality(quality);
+		}
+	}
+
+	/**
+	 * @return how detailed the drawing is
+	 */
+	public QualityGovernor.Quality quality() {
+		return _quality;
+	}
+
+	/**
+	 * Turns the quality governor on or off. While it is on, the quality is lowered when frames take too long
+	 * and raised again when there is time to spare, starting from the current quality
+	 * @param adaptive whether the quality should adapt to the frame times
+	 */
+	public void setAdaptiveQuality(boolean adaptive) {
+		_governor = adaptive ? new QualityGovernor(_quality) : null;
+	}
+
+	/**
+	 * Times the first frames of the song, and prints how long they took once they have all been painted,
+	 * so that the stutter at the start of a song can be compared with and without a warm-up
+	 * @param frames the number of frames to time
+	 */
+	public void timeFirstFrames(int frames) {
+		_firstFrameTimes = new long[frames];
+		_firstFrameCount = 0;
+	}
+
+	/**
+	 * Prints the average and the longest time taken by the first frames of the song, and stops timing frames
+	 */
+	private void reportFirstFrames() {
+		long total = 0;
+		long longest = 0;
+		int late = 0;
+		for (long time : _firstFrameTimes) {
+			total += time;
+			longest = Math.max(longest, time);
+			if (time > DELAY * 1000000L) {
+				late++;
+			}
+		}
+		String report = String.format("The first %d frames took %.2fms on average and %.2fms at most; %d took longer than %dms",
+				_firstFrameTimes.length, total / 1e6 / _firstFrameTimes.length, longest / 1e6, late, DELAY);
+		if (_warmUp != null) {
+			report += ", after a warm-up of " + _warmUp.iterations() + " frames";
+		}
+		System.out.println(report);
+		_firstFrameTimes = null;
+	}
+
+	/**
+	 * Warms up the JIT compiler before the song starts, by playing a synthetic chart offscreen with the same number of
+	 * players and columns and the same renderer as this game. This should be called while loading, before the window is shown
+	 * @param iterations the most frames to play
+	 * @return the warm-up, which says how long it took
+	 */
+	public WarmUp warmUp(int iterations) {
+		_warmUp = new WarmUp(_players.size(), _numCols, _renderer == null ? null : _renderer.mode());
+		_warmUp.setIterations(iterations);
+		_warmUp.run();
+		return _warmUp;
+	}
+
+	/**
+	 * Stops the animation and every background thread this GameView started. This GameView can't be used after this is called
+	 */
+	public void shutdown() {
+		_timer.stop();
+		stopRecording();
+		stopWatchingChart();
+		stopExportingScores();
+		setCourse(null);
+		setRenderer(null);
+		setBackgroundArt(null);
+	}
+
+	/**
+	 * @param noteData the note data of a chart
+	 * @return the time at which the chart's last period ends
+	 */
+	private static int chartEnd(List<? extends List<Period>> noteData) {
+		int end = 0;
+		for (List<Period> column : noteData) {
+			if (!column.isEmpty()) {
+				end = Math.max(end, column.get(column.size() - 1).end());
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Applies every change to the chart which the watcher has found since the last frame.
+	 * The time and the judgement of the unchanged notes are kept
+	 */
+	private void applyChartChanges() {
+		ChartWatcher.Change change;
+		while ((change = _watcher.poll()) != null) {
+			// a replay can only be played back against the chart it was recorded on
+			stopRecording();
+			change.apply(_players, _timeElapsed);
+			_noteData = change.noteData();
+			_chartEnd = chartEnd(_noteData);
+			System.out.println("Reloaded the chart: " + change);
+		}
+	}
+
+	/**
+	 * Plays a course: when the song ends, the next song of the course starts straight away, at time 0.
+	 * The players' judgement counts carry on through the course. Every song has to have the same number of columns
+	 * @param course the songs to play after this one, or null to stop at the end of this song
+	 */
+	public void setCourse(Course course) {
+		if (_course != null && _course != course) {
+			_course.shutdown();
+		}
+		_course = course;
+	}
+
+	/**
+	 * Switches to the next song of the course, if it has finished loading. If it hasn't, this is tried again on the next frame.
+	 * Switching only swaps in note data which is already preprocessed and copied, so it takes no longer than seeking,
+	 * and the last song's note data is let go of. If the last song's chart was being watched, the new song's chart is watched instead
+	 */
+	private void nextCourseSong() {
+		Course.Chart chart = _course.takeIfReady();
+		if (chart == null) {
+			if (!_course.hasNext()) {
+				_course.shutdown();
+				_course = null;
+				System.out.println("Course finished");
+			}
+			return;
+		}
+		if (chart.noteData().size() != _numCols) {
+			System.out.println("Skipping " + chart.song() + ", which has " + chart.noteData().size() + " columns instead of " + _numCols);
+			if (chart.background() != null) {
+				chart.background().shutdown();
+			}
+			return;
+		}
+		// the watcher is watching the last song's chart, and the new one is compared against the note data it starts with
+		boolean watching = _watcher != null;
+		stopWatchingChart();
+		_noteData = chart.noteData();
+		_chartEnd = chartEnd(_noteData);
+		_timeElapsed = 0;
+		for (int i = 0; i < _players.size(); i++) {
+			_players.get(i).setNoteData(chart.copy(i), 0);
+		}
+		if (watching) {
+			try {
+				watchChart(PIUFileReader.noteDataFile(chart.song()));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		setBackgroundArt(chart.background());
+		_finished = false;
+		System.out.println("Now playing " + chart.song());
+	}
+
+	/**
+	 * Starts watching a NoteData file, so that changes to it are shown as soon as it is saved, without stopping the song.
+	 * The file must have the same number of columns as the chart being played
+	 * @param file the NoteData file
+	 * @throws IOException if the file can't be watched
+	 */
+	public void watchChart(File file) throws IOException {
+		stopWatchingChart();
+		_watcher = new ChartWatcher(file, _players);
+	}
+
+	/**
+	 * Stops watching the chart for changes, if it is being watched
+	 */
+	public void stopWatchingChart() {
+		if (_watcher != null) {
+			_watcher.shutdown();
+			_watcher = null;
+		}
+	}
+
+	/**
+	 * Starts publishing the players' scores to a memory-mapped file once a frame, for stream overlays to read
+	 * @param file the file to publish to
+	 * @throws IOException if the file can't be created
+	 */
+	public void exportScores(File file) throws IOException {
+		stopExportingScores();
+		_exporter = new ScoreExporter(file, _players.size());
+	}
+
+	/**
+	 * Stops publishing the players' scores, if they are being published
+	 */
+	public void stopExportingScores() {
+		if (_exporter != null) {
+			_exporter.close();
+			_exporter = null;
+		}
+	}
+
+	/**
+	 * Moves the game clock on by one frame. In practice mode the frame is scaled by the playback rate,
+	 * and the clock jumps back to the start of the loop when it reaches the end of the loop
+	 */
+	private void advanceClock() {
+		if (_practice == null) {
+			_timeElapsed += DELAY;
+			// once every period has been judged the session is over
+			if (!_finished && _timeElapsed > _chartEnd + Column.DISCREPANCY + DELAY) {
+				songFinished();
+			}
+			return;
+		}
+		_timeElapsed = _practice.nextTime(_timeElapsed, DELAY);
+		if (_practice.looping() && _timeElapsed >= _practice.loopEnd()) {
+			seek(_practice.loopStart());
+		}
+	}
+
+	/**
+	 * Called once, on the frame after every period of the song has been judged.
+	 * Ends the recording, and saves the result of a calibration session
+	 */
+	private void songFinished() {
+		_finished = true;
+		stopRecording();
+		if (_calibrating) {
+			_calibrating = false;
+			LatencyCalibration.saveOffset(_calibration.result());
+			System.out.println("Calibration: " + _calibration.stats() + ", offset saved as " + _calibration.result() + "ms");
+			_calibration = null;
+		}
+	}
+
+	/**
+	 * Moves the song straight to a new time. This takes logarithmic time however long the chart is.
+	 * When seeking backwards, the notes between the new time and the old time can be played again
+	 * @param time the time to move to, in ms since the start of the song
+	 */
+	public void seek(int time) {
+		// a replay can't show a seek, so the recording ends here
+		stopRecording();
+		time = Math.max(0, time);
+		for (Player p : _players) {
+			if (time < _timeElapsed) {
+				// notes up to DISCREPANCY after the old time may already have been judged
+				p.resetJudgement(time, _timeElapsed + Column.DISCREPANCY);
+			}
+			p.seek(time);
+		}
+		_timeElapsed = time;
+	}
+
+	/**
+	 * Starts recording the input of this session to a replay file. The recording ends when the song is over,
+	 * when stopRecording() is called, or when the song is seeked
+	 * @param file the replay file
+	 * @param song the name of the song
+	 * @throws IOException if the file can't be written
+	 */
+	public void startRecording(File file, String song) throws IOException {
+		stopRecording();
+		_recorder = new ReplayRecorder(file, song, _noteData, _players.size(), _offset);
+	}
+
+	/**
+	 * Ends the recording, if there is one, writing the judgement counts so far
+	 */
+	public void stopRecording() {
+		if (_recorder != null) {
+			_recorder.finish(_timeElapsed, _players);
+			_recorder = null;
+		}
+	}
+
+	/**
+	 * Sets the latency offset: how many ms late the presses on this machine arrive, compared to what the player saw.
+	 * It is subtracted from the time used for judgement, so a positive offset moves every judgement window later
+	 * @param offset the offset in ms
+	 */
+	public void setOffset(int offset) {
+		_offset = offset;
+		for (int i = 0; i < _players.size(); i++) {
+			_players.get(i).setOffset(offset);
+		}
+		if (_recorder != null) {
+			_recorder.recordOffset(_timeElapsed, offset);
+		}
+	}
+
+	/**
+	 * @return the latency offset, in ms
+	 */
+	public int offset() {
+		return _offset;
+	}
+
+	/**
+	 * Makes this a calibration session: the timing error of every press is collected, and when the song is over
+	 * their median is saved as this machine's offset. The offset is 0 during the session, so the errors are measured directly
+	 */
+	public void startCalibration() {
+		setOffset(0);
+		_calibration = new LatencyCalibration(false, 0);
+		_calibrating = true;
+	}
+
+	/**
+	 * Turns automatic offset adjustment on or off. While it is on, the offset follows a moving average of the timing errors
+	 * of the player's presses, so it keeps up with changes in latency during play
+	 * @param on whether the offset should be adjusted automatically
+	 */
+	public void setAutoOffset(boolean on) {
+		_calibrating = false;
+		_calibration = on ? new LatencyCalibration(true, _offset) : null;
+	}
+
+	/**
+	 * @return the time of a key event, more precise than the frame clock: the time of the last frame plus the time since it was painted
+	 */
+	private int eventTime() {
+		long sinceFrame = (System.nanoTime() - _lastFrameNanos) / 1000000;
+		return _timeElapsed - DELAY + (int) Math.max(0, Math.min(DELAY, sinceFrame));
+	}
+
+	/**
+	 * @return the time elapsed since the start of the song, in ms
+	 */
+	public int timeElapsed() {
+		return _timeElapsed;
+	}
+
+	/**
+	 * Turns practice mode on or off. In practice mode, these keys are used:
+	 * F1 sets the start of the loop, F2 sets the end of the loop, F3 clears the loop,
+	 * F5 and F6 slow down and speed up the song, the left and right arrows seek backwards and forwards,
+	 * and Home goes back to the start of the song
+	 * @param on whether practice mode should be on
+	 */
+	public void setPracticeMode(boolean on) {
+		_practice = on ? new PracticeMode() : null;
+	}
+
+	/**
+	 * @return the practice settings, or null if practice mode is off
+	 */
+	public PracticeMode practiceMode() {
+		return _practice;
+	}
+
+	/**
+	 * Handles the keys used in practice mode
+	 * @param e the KeyEvent for the key which was pressed
+	 * @return whether the key was a practice key
+	 */
+	private boolean practiceKeyPressed(KeyEvent e) {
+		switch (e.getKeyCode()) {
+		case KeyEvent.VK_F1:
+			_practice.setLoopStart(_timeElapsed);
+			return true;
+		case KeyEvent.VK_F2:
+			if (_timeElapsed > Math.max(0, _practice.loopStart())) {
+				_practice.setLoopEnd(_timeElapsed);
+				seek(_practice.loopStart());
+			}
+			return true;
+		case KeyEvent.VK_F3:
+			_practice.clearLoop();
+			return true;
+		case KeyEvent.VK_F5:
+			_practice.changeRate(-0.1);
+			return true;
+		case KeyEvent.VK_F6:
+			_practice.changeRate(0.1);
+			return true;
+		case KeyEvent.VK_LEFT:
+			seek(_timeElapsed - SEEK_STEP);
+			return true;
+		case KeyEvent.VK_RIGHT:
+			seek(_timeElapsed + SEEK_STEP);
+			return true;
+		case KeyEvent.VK_HOME:
+			seek(0);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Sets the background art drawn behind the players
+	 * @param background the background art, or null for none
+	 */
+	public void setBackgroundArt(BackgroundArt background) {
+		if (_background != null && _background != background) {
+			_background.shutdown();
+		}
+		_background = background;
+		if (_background != null) {
+			_background.setSize(getWidth(), getHeight());
+		}
+	}
+
+	/**
+	 * Sets the renderer used to draw the players.
+	 * @param renderer the renderer to use, or null to draw everything on the event dispatch thread
+	 */
+	public void setRenderer(TiledRenderer renderer) {
+		if (_renderer != null && _renderer != renderer) {
+			_renderer.shutdown();
+		}
+		_renderer = renderer;
 	}
 
 	/**
@@ -105,13 +664,90 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 	 * Main program method to create an GameView object and display this
 	 * within a JFrame window. Used for testing purposes; later this view will be created from View.java, which commands the view
 	 * The song will be specified by the main view
+	 * Passing "bands" or "players" as an argument draws the game with a TiledRenderer,
+	 * and passing "practice" turns on practice mode. Sessions which aren't practice are recorded to the replays directory.
+	 * Passing "calibrate" plays a metronome chart to measure this machine's latency offset instead of the song,
+	 * and passing "autooffset" keeps adjusting the offset during play.
+	 * The song's chart is watched, so that changes to it show up as soon as it is saved.
+	 * Passing "course=song1,song2,..." plays those songs back to back as a course, without recording them,
+	 * and passing "export" publishes the scores to ScoreExporter.DEFAULT_FILE for ScoreReader or an overlay to read.
+	 * Passing "warmup" or "warmup=frames" warms up the JIT compiler before the window opens.
+	 * The times of the song's first frames are printed, to compare with and without a warm-up.
+	 * Passing "adaptive" lowers the quality of the drawing when frames take too long.
+	 * Any other argument is ignored, and the usage is printed
 	 */
-	public static void main(String[] args) {
+	public static void main(final String[] args) {
 		javax.swing.SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				JFrame frame = new JFrame("Animation viewer");
 				String song = "test";
-				GameView game = new GameView(1, song);
+				boolean calibrate = false;
+				List<String> course = null;
+				int warmUp = 0;
+				for (String arg : args) {
+					calibrate |= arg.equals("calibrate");
+					if (arg.equals("warmup")) {
+						warmUp = WarmUp.DEFAULT_ITERATIONS;
+					} else if (arg.startsWith("warmup=")) {
+						try {
+							warmUp = Integer.parseInt(arg.substring("warmup=".length()));
+						} catch (NumberFormatException e) {
+							System.err.println("Ignoring " + arg + ", which isn't a number of frames. " + USAGE);
+						}
+					}
+					if (arg.startsWith("course=")) {
+						course = new ArrayList<String>(Arrays.asList(arg.substring("course=".length()).split(",")));
+						song = course.remove(0);
+					}
+				}
+				GameView game;
+				if (calibrate) {
+					game = new GameView(1, LatencyCalibration.metronomeChart(Layout.FIVE_PANEL.panelCount()));
+					game.startCalibration();
+				} else {
+					game = new GameView(1, song);
+					game.setOffset(LatencyCalibration.savedOffset());
+					try {
+						game.watchChart(PIUFileReader.noteDataFile(song));
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				for (String arg : args) {
+					if (arg.equals("practice")) {
+						game.setPracticeMode(true);
+					} else if (arg.equals("autooffset")) {
+						game.setAutoOffset(true);
+					} else if (arg.equals("adaptive")) {
+						game.setAdaptiveQuality(true);
+					} else if (arg.equals("export")) {
+						try {
+							game.exportScores(ScoreExporter.DEFAULT_FILE);
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					} else if (arg.equals("bands")) {
+						game.setRenderer(new TiledRenderer(TiledRenderer.Mode.BANDS));
+					} else if (arg.equals("players")) {
+						game.setRenderer(new TiledRenderer(TiledRenderer.Mode.PLAYERS));
+					} else if (!arg.equals("calibrate") && !arg.startsWith("course=") && !arg.equals("warmup") && !arg.startsWith("warmup=")) {
+						// an unknown argument is only reported, so that a typo doesn't stop the game from starting
+						System.err.println("Ignoring unknown argument " + arg + ". " + USAGE);
+					}
+				}
+				if (course != null && !calibrate) {
+					game.setCourse(new Course(course, 1));
+				} else if (game.practiceMode() == null && !calibrate) {
+					try {
+						game.startRecording(ReplayRecorder.fileFor(song), song);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				if (warmUp > 0) {
+					System.out.println(game.warmUp(warmUp));
+				}
+				game.timeFirstFrames(10000 / DELAY);
 				frame.add(game);
 				frame.addComponentListener(game);
 				frame.addKeyListener(game);
@@ -144,6 +780,10 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 			//passed in are: width of the player, height of the screen, and the x value of the middle of this player
 			_players.get(i).updateSize(width, getHeight(),width*i);
 		}
+		// the background frames which have already been scaled are the wrong size now
+		if (_background != null) {
+			_background.setSize(getWidth(), getHeight());
+		}
 	}
 	
 	@Override
@@ -158,6 +798,9 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 	 */
 	@Override
 	public void keyPressed(KeyEvent e) {
+		if (_practice != null && practiceKeyPressed(e)) {
+			return;
+		}
 		//INPUT_CHARACTERS.indexOf(e.getKeyChar()) gets the index of the character in the INPUT_CHARACTERS String
 		//_players.get(0).numCols() gets the number of columns of which the players are using (all the players use the same number of columns)
 		//character index / number of columns per player = the index of the player
@@ -166,6 +809,31 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 		if (characterIndex < _numCols*_players.size()) {
 			//then this character is a valid input character
 			_players.get(characterIndex/_numCols).keyPressed(e);
+			if (_recorder != null) {
+				_recorder.record(_timeElapsed, characterIndex, true);
+			}
+			if (_calibration != null && characterIndex >= 0 && !_held[characterIndex]) {
+				timePress(characterIndex, e.getKeyChar());
+			}
+			if (characterIndex >= 0) {
+				_held[characterIndex] = true;
+			}
+		}
+	}
+
+	/**
+	 * Adds the timing error of a press to the calibration, and changes the offset if the calibration asks for it
+	 * @param characterIndex the column of the key, counting across all the players
+	 * @param key the key which was pressed
+	 */
+	private void timePress(int characterIndex, char key) {
+		int error = _players.get(characterIndex/_numCols).timingError(key, eventTime());
+		if (error == Column.NO_NOTE) {
+			return;
+		}
+		int offset = _calibration.addError(error);
+		if (offset != _offset) {
+			setOffset(offset);
 		}
 	}
 	/**
@@ -177,6 +845,12 @@ public class GameView extends JPanel implements ActionListener, ComponentListene
 		if (characterIndex < _numCols*_players.size()) {
 			//then this character is a valid input character
 		_players.get(INPUT_CHARACTERS.indexOf(e.getKeyChar())/_numCols).keyReleased(e);
+			if (_recorder != null) {
+				_recorder.record(_timeElapsed, characterIndex, false);
+			}
+			if (characterIndex >= 0) {
+				_held[characterIndex] = false;
+			}
 		}
 	}
 
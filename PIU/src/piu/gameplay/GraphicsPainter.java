@@ -6,6 +6,7 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.FontMetrics;
 import java.awt.Image;
+import java.awt.RenderingHints;
 
 /**
  * Implementation of the Painter interface that delegates drawing to a
@@ -15,20 +16,55 @@ import java.awt.Image;
  * 
  */
 public class GraphicsPainter {
-	private Color DEFAULT_COLOR = Color.BLACK;
-	private Font DEFAULT_FONT =  new Font("TimessRoman", Font.PLAIN, Column.fontSize());
+	private static final Color DEFAULT_COLOR = Color.BLACK;
+	// shared by every painter, since Fonts never change
+	private static final Font DEFAULT_FONT =  new Font("TimessRoman", Font.PLAIN, Column.fontSize());
 	// Delegate object.
 	private Graphics2D _g;
+	
+	// the last font made by setFontSize, and the font it was made from, so that it isn't made again every frame
+	private Font _sizedFont;
+	private Font _sizedFrom;
 
 	/**
 	 * Creates a GraphicsPainter object and sets its Graphics delegate.
 	 */
 	public GraphicsPainter(Graphics g) {
+		setGraphics(g);
+	}
+	
+	/**
+	 * Creates a GraphicsPainter object without a Graphics delegate. setGraphics() must be called before it is used
+	 */
+	public GraphicsPainter() {
+	}
+	
+	/**
+	 * Sets a new Graphics delegate, so that one painter can be reused for every frame
+	 * @param g the new delegate
+	 */
+	public void setGraphics(Graphics g) {
 		this._g = (Graphics2D) g;
 		_g.setColor(DEFAULT_COLOR);
 		_g.setFont(DEFAULT_FONT);
 	}
 
+	/**
+	 * Turns on text antialiasing and the quality rendering hints, or puts them back to their defaults.
+	 * The hints are only changed if they need to be, since changing them makes the Graphics throw away its cached font information
+	 * @param antialiased whether text is antialiased and drawn for quality
+	 */
+	public void setAntialiased(boolean antialiased) {
+		Object text = antialiased ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT;
+		if (_g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING) != text) {
+			_g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, text);
+		}
+		Object rendering = antialiased ? RenderingHints.VALUE_RENDER_QUALITY : RenderingHints.VALUE_RENDER_DEFAULT;
+		if (_g.getRenderingHint(RenderingHints.KEY_RENDERING) != rendering) {
+			_g.setRenderingHint(RenderingHints.KEY_RENDERING, rendering);
+		}
+	}
+
 	/**
 	 * @see Painter.drawRect
 	 */
@@ -139,6 +175,14 @@ public class GraphicsPainter {
 	 * @param size the new font size
 	 */
 	public void setFontSize(float size) {
-		_g.setFont(_g.getFont().deriveFont(size));
+		Font font = _g.getFont();
+		if (font.getSize2D() == size) {
+			return;
+		}
+		if (_sizedFont == null || _sizedFrom != font || _sizedFont.getSize2D() != size) {
+			_sizedFrom = font;
+			_sizedFont = font.deriveFont(size);
+		}
+		_g.setFont(_sizedFont);
 	}
 }
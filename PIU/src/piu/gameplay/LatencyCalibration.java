@@ -0,0 +1,118 @@
+package piu.gameplay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.prefs.Preferences;
+
+import piu.utilities.StreamingStats;
+
+/**
+ * LatencyCalibration works out how late (or early) this machine's inputs and display make the player's presses look,
+ * from the signed timing errors of presses: the time of the press minus the time of the nearest arrow.
+ * The global offset which comes out of it is subtracted from the time used for judgement in every Column.
+ * In calibration mode a metronome chart is played and the offset is the median error once it is over.
+ * In live mode the offset keeps following a moving average of the errors during normal play.
+ * The offset is stored in the user preferences of this machine
+ * @author AAA
+ */
+public class LatencyCalibration {
+	// the largest offset allowed, in ms. Errors bigger than this are presses which weren't aimed at the nearest arrow
+	static final int MAX_OFFSET = 300;
+
+	// the metronome chart: an arrow every BEAT ms after a lead in, in the middle column
+	private static final int BEAT = 500;
+	private static final int BEATS = 64;
+	private static final int LEAD_IN = 3000;
+
+	// in live mode, how much each error moves the average, and how many errors are needed before the offset changes
+	private static final double LIVE_WEIGHT = 0.05;
+	private static final int LIVE_MIN_ERRORS = 16;
+
+	private static final String OFFSET_KEY = "globalOffset";
+	private static final Preferences PREFERENCES = Preferences.userNodeForPackage(LatencyCalibration.class);
+
+	private final boolean _live;
+	private final StreamingStats _stats = new StreamingStats();
+	private double _average;
+	private int _offset;
+
+	/**
+	 * Creates a new calibration
+	 * @param live whether the offset should follow the errors during play, rather than being worked out at the end
+	 * @param offset the offset to start with, in ms
+	 */
+	public LatencyCalibration(boolean live, int offset) {
+		_live = live;
+		_offset = offset;
+		_average = offset;
+	}
+
+	/**
+	 * @return the global offset saved for this machine, in ms, or 0 if it has never been calibrated
+	 */
+	public static int savedOffset() {
+		return PREFERENCES.getInt(OFFSET_KEY, 0);
+	}
+
+	/**
+	 * Saves the global offset for this machine
+	 * @param offset the offset in ms
+	 */
+	public static void saveOffset(int offset) {
+		PREFERENCES.putInt(OFFSET_KEY, offset);
+	}
+
+	/**
+	 * Makes the metronome chart played in calibration mode
+	 * @param numCols the number of columns
+	 * @return note data with a single arrow every beat in the middle column
+	 */
+	public static List<ArrayList<Period>> metronomeChart(int numCols) {
+		List<ArrayList<Period>> noteData = new ArrayList<ArrayList<Period>>();
+		for (int i = 0; i < numCols; i++) {
+			noteData.add(new ArrayList<Period>());
+		}
+		for (int beat = 0; beat < BEATS; beat++) {
+			int start = LEAD_IN + beat * BEAT;
+			noteData.get(numCols / 2).add(new Period(start, start + 1));
+		}
+		return ChartPreprocessor.process(noteData);
+	}
+
+	/**
+	 * Adds the timing error of a press
+	 * @param error the time of the press minus the time of the nearest arrow, in ms
+	 * @return the offset which should be used from now on
+	 */
+	public int addError(int error) {
+		if (Math.abs(error) > MAX_OFFSET) {
+			return _offset;
+		}
+		_stats.add(error);
+		if (_live) {
+			_average += (error - _average) * LIVE_WEIGHT;
+			if (_stats.count() >= LIVE_MIN_ERRORS) {
+				_offset = (int) Math.round(_average);
+			}
+		}
+		return _offset;
+	}
+
+	/**
+	 * @return the offset worked out from the errors so far: the median error in calibration mode,
+	 * or the moving average in live mode
+	 */
+	public int result() {
+		if (_live || _stats.count() == 0) {
+			return _offset;
+		}
+		return (int) Math.round(_stats.median());
+	}
+
+	/**
+	 * @return the statistics of the errors so far
+	 */
+	public StreamingStats stats() {
+		return _stats;
+	}
+}
@@ -0,0 +1,163 @@
+package piu.gameplay;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Layout describes the panels which a player has: how many there are, and the glyph, colour and position of each one.
+ * Layouts are just data, so adding a new style of game only means adding a new Layout here
+ * @author AAA
+ */
+class Layout {
+	// Dance Dance Revolution style: left, down, up, right
+	static final Layout FOUR_PANEL = new Layout("4-panel",
+			new Panel("🡸", Color.MAGENTA, 0),
+			new Panel("🡻", Color.CYAN, 1),
+			new Panel("🡹", Color.CYAN, 2),
+			new Panel("🡺", Color.MAGENTA, 3));
+
+	// Pump It Up style: down-left, up-left, center, up-right, down-right
+	static final Layout FIVE_PANEL = new Layout("5-panel",
+			new Panel("🡿", Color.RED, 0),
+			new Panel("🡼", Color.BLUE, 1),
+			new Panel("⧆", Color.YELLOW, 2),
+			new Panel("🡽", Color.BLUE, 3),
+			new Panel("🡾", Color.RED, 4));
+
+	// solo style: left, up-left, down, up, up-right, right
+	static final Layout SIX_PANEL = new Layout("6-panel",
+			new Panel("🡸", Color.MAGENTA, 0),
+			new Panel("🡼", Color.ORANGE, 1),
+			new Panel("🡻", Color.CYAN, 2),
+			new Panel("🡹", Color.CYAN, 3),
+			new Panel("🡽", Color.ORANGE, 4),
+			new Panel("🡺", Color.MAGENTA, 5));
+
+	// Pump It Up doubles: two 5-panel pads side by side, played by one player
+	static final Layout TEN_PANEL_DOUBLES = new Layout("10-panel doubles",
+			new Panel("🡿", Color.RED, 0),
+			new Panel("🡼", Color.BLUE, 1),
+			new Panel("⧆", Color.YELLOW, 2),
+			new Panel("🡽", Color.BLUE, 3),
+			new Panel("🡾", Color.RED, 4),
+			new Panel("🡿", Color.RED, 5),
+			new Panel("🡼", Color.BLUE, 6),
+			new Panel("⧆", Color.YELLOW, 7),
+			new Panel("🡽", Color.BLUE, 8),
+			new Panel("🡾", Color.RED, 9));
+
+	// every layout, used to find a layout for a chart
+	private static final List<Layout> LAYOUTS = Arrays.asList(FOUR_PANEL, FIVE_PANEL, SIX_PANEL, TEN_PANEL_DOUBLES);
+
+	private final String _name;
+	private final List<Panel> _panels;
+
+	/**
+	 * Creates a new layout
+	 * @param name the name of the layout
+	 * @param panels the panels, from left to right
+	 */
+	Layout(String name, Panel... panels) {
+		_name = name;
+		_panels = Collections.unmodifiableList(new ArrayList<Panel>(Arrays.asList(panels)));
+	}
+
+	/**
+	 * Finds the layout which has a given number of panels
+	 * @param panelCount the number of columns in the chart
+	 * @return the layout with that many panels, or a repeating layout if none of the styles above has that many
+	 * @throws IllegalArgumentException if there are no panels
+	 */
+	static Layout forPanelCount(int panelCount) {
+		for (Layout layout : LAYOUTS) {
+			if (layout.panelCount() == panelCount) {
+				return layout;
+			}
+		}
+		return repeating(panelCount);
+	}
+
+	/**
+	 * Makes a layout for a number of panels which no style of game has, such as the charts used for testing.
+	 * The 5-panel glyphs and colours are repeated from left to right
+	 * @param panelCount the number of panels
+	 * @return the new layout
+	 * @throws IllegalArgumentException if there are no panels
+	 */
+	static Layout repeating(int panelCount) {
+		if (panelCount < 1) {
+			throw new IllegalArgumentException("There is no layout with " + panelCount + " panels");
+		}
+		Panel[] panels = new Panel[panelCount];
+		for (int i = 0; i < panelCount; i++) {
+			Panel pattern = FIVE_PANEL.panel(i % FIVE_PANEL.panelCount());
+			panels[i] = new Panel(pattern.glyph(), pattern.color(), i);
+		}
+		return new Layout(panelCount + "-panel", panels);
+	}
+
+	/**
+	 * @return the number of panels in this layout
+	 */
+	int panelCount() {
+		return _panels.size();
+	}
+
+	/**
+	 * @param index the index of the panel, from the left
+	 * @return the panel at that index
+	 */
+	Panel panel(int index) {
+		return _panels.get(index);
+	}
+
+	@Override
+	public String toString() {
+		return _name;
+	}
+
+	/**
+	 * A Panel holds how one column looks: the glyph drawn for each arrow, its colour, and where it goes
+	 */
+	static class Panel {
+		private final String _glyph;
+		private final Color _color;
+		// the position of this column from the left of the player, in column widths (including padding)
+		private final double _position;
+
+		/**
+		 * @param glyph the text drawn for each arrow
+		 * @param color the colour to draw the arrows in
+		 * @param position the position of this column from the left of the player, in column widths
+		 */
+		Panel(String glyph, Color color, double position) {
+			_glyph = glyph;
+			_color = color;
+			_position = position;
+		}
+
+		/**
+		 * @return the text drawn for each arrow
+		 */
+		String glyph() {
+			return _glyph;
+		}
+
+		/**
+		 * @return the colour the arrows are drawn in. Columns with the same colour are drawn together
+		 */
+		Color color() {
+			return _color;
+		}
+
+		/**
+		 * @return the position of this column from the left of the player, in column widths
+		 */
+		double position() {
+			return _position;
+		}
+	}
+}
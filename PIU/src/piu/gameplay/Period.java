@@ -9,13 +9,18 @@ import java.util.Arrays;
  */
 public class Period {
 	// if start + 1 == end then it is not a hold, just a single arrow
-	private int _start;
-	private int _end;
-	// keeps track of whether the arrow has been hit or not
+	private final int _start;
+	private final int _end;
+	// worked out once when the period is made, since they are checked every frame
+	private final boolean _hold;
+	// the index of the next period in the same column, or -1 if this is the last one. Set by the ChartPreprocessor
+	private int _next = -1;
+	// keeps track of whether the arrow has been hit or not, one entry for every tick of the period
 	private boolean[] _hit;
 	public Period(int start, int end) {
 		_start = start;
 		_end = end;
+		_hold = end != start + 1;
 		//(end - start)/Column.MAX_HOLD_ARROW_DENSITY is the index of the nearest available spot in the period
 		_hit = new boolean[(end-start)/Column.MAX_HOLD_ARROW_DENSITY + 1];
 		Arrays.fill(_hit, false);
@@ -42,7 +47,32 @@ public class Period {
 	 * @return whether or not this is a hold 
 	 */
 	public boolean hold() {
-		return _end != _start + 1;
+		return _hold;
+	}
+	/**
+	 * @return the number of ticks in this period, each of which has to be hit. A single arrow has one tick
+	 */
+	public int ticks() {
+		return _hit.length;
+	}
+	/**
+	 * @param time the time to check
+	 * @return whether time falls on one of this period's ticks
+	 */
+	public boolean covers(int time) {
+		return time >= _start && (time - _start)/Column.MAX_HOLD_ARROW_DENSITY < _hit.length;
+	}
+	/**
+	 * @return the index of the next period in the same column, or -1 if this is the last one
+	 */
+	public int next() {
+		return _next;
+	}
+	/**
+	 * @param next the index of the next period in the same column, or -1 if this is the last one
+	 */
+	void setNext(int next) {
+		_next = next;
 	}
 	/**
 	 * @param time the time to check
@@ -55,6 +85,12 @@ public class Period {
 		}
 		return _hit[index];
 	}
+	/**
+	 * Forgets which parts of this period have been hit, so that it can be played again
+	 */
+	public void reset() {
+		Arrays.fill(_hit, false);
+	}
 	/**
 	 * 
 	 */
@@ -3,6 +3,7 @@
  */
 package piu.gameplay;
 
+import java.awt.Color;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,22 +21,91 @@ class Player {
 	// the horizontal distance between arrows in columns
 	private int _columnPadding = 20;
 	
+	// the columns grouped by the colour they are drawn in, so that each colour only has to be set once per frame
+	private Color[] _renderColors;
+	private Column[][] _renderGroups;
+	
+	// the judgement counts and combo so far
+	private int _hits = 0;
+	private int _misses = 0;
+	private int _combo = 0;
+	private int _maxCombo = 0;
+	
+	// the last judgement, one of the JUDGEMENT_ constants, and the time of the frame it was made on
+	static final int JUDGEMENT_NONE = 0;
+	static final int JUDGEMENT_HIT = 1;
+	static final int JUDGEMENT_MISS = 2;
+	private int _lastJudgement = JUDGEMENT_NONE;
+	private int _lastJudgementTime = 0;
+	// the time of the frame being updated
+	private int _time = 0;
+	
+	// how detailed the drawing is
+	private QualityGovernor.Quality _quality = QualityGovernor.Quality.NORMAL;
+	
+	// the x position of the left of this player, and its width
+	private int _x;
+	private int _width;
+	
 	/**
-	 * Create a new Player. This involves making all the necessary columns with their note data,
-	 * and then putting them on the _columns list. This will need to be changed to change the number of columns
+	 * Create a new Player, using the layout which has one panel for every column of note data
 	 * @param noteData a list of note data lists, one for each column
+	 * @param inputChars the characters which the columns take input for, one for each column
 	 */
 	public Player(List<ArrayList<Period>> noteData, String inputChars) {
-		_columns.add(new Downleft(noteData.get(0), this, inputChars.charAt(0)));
-		_columns.add(new Upleft(noteData.get(1), this, inputChars.charAt(1)));
-		_columns.add(new Center(noteData.get(2), this, inputChars.charAt(2)));
-		_columns.add(new Upright(noteData.get(3), this, inputChars.charAt(3)));
-		_columns.add(new Downright(noteData.get(4), this, inputChars.charAt(4)));
+		this(noteData, inputChars, Layout.forPanelCount(noteData.size()));
+	}
+	
+	/**
+	 * Create a new Player. This involves making all the necessary columns with their note data,
+	 * and then putting them on the _columns list. There is one column for each panel of the layout
+	 * @param noteData a list of note data lists, one for each column
+	 * @param inputChars the characters which the columns take input for, one for each column
+	 * @param layout the layout which decides how each column looks
+	 */
+	public Player(List<ArrayList<Period>> noteData, String inputChars, Layout layout) {
+		if (noteData.size() != layout.panelCount()) {
+			throw new IllegalArgumentException("The " + layout + " layout can't play a chart with " + noteData.size() + " columns");
+		}
+		for (int i = 0; i < layout.panelCount(); i++) {
+			_columns.add(new Column(noteData.get(i), this, inputChars.charAt(i), layout.panel(i)));
+		}
+		groupColumns();
+	}
+	
+	/**
+	 * Groups the columns by the colour that they are drawn in, keeping the order of the first column of each colour
+	 */
+	private void groupColumns() {
+		List<Color> colors = new ArrayList<Color>();
+		List<List<Column>> groups = new ArrayList<List<Column>>();
+		for (Column c : _columns) {
+			int index = colors.indexOf(c.panel().color());
+			if (index == -1) {
+				colors.add(c.panel().color());
+				groups.add(new ArrayList<Column>());
+				index = colors.size() - 1;
+			}
+			groups.get(index).add(c);
+		}
+		_renderColors = colors.toArray(new Color[colors.size()]);
+		_renderGroups = new Column[groups.size()][];
+		for (int i = 0; i < groups.size(); i++) {
+			_renderGroups[i] = groups.get(i).toArray(new Column[groups.get(i).size()]);
+		}
 	}
 	
 	int numCols() {
 		return _columns.size();
 	}
+	
+	/**
+	 * Sets how detailed the drawing is. This doesn't change the judgement
+	 * @param quality the quality to draw at
+	 */
+	void setQuality(QualityGovernor.Quality quality) {
+		_quality = quality;
+	}
 	/**
 	 * Calls on all the columns to move their arrows forward
 	 * 
@@ -43,10 +113,90 @@ class Player {
 	 * @param timeElapsed the time elapsed since the start of the song
 	 */
 	void advance(GraphicsPainter painter, int timeElapsed) {
+		update(timeElapsed);
+		draw(painter, timeElapsed);
+	}
+	/**
+	 * Calls on all the columns to move their arrows forward and check inputs, without drawing anything
+	 * 
+	 * @param timeElapsed the time elapsed since the start of the song
+	 */
+	void update(int timeElapsed) {
+		_time = timeElapsed;
+		// indexed rather than for-each, so that no Iterator is made every frame
+		for (int i = 0; i < _columns.size(); i++) {
+			_columns.get(i).update(timeElapsed);
+		}
+	}
+	/**
+	 * Calls on all the columns to draw their arrows. This can be called from several threads at once,
+	 * as long as each thread uses its own painter and update() isn't running at the same time.
+	 * The columns are drawn in one pass grouped by colour, so the font is set once and each colour is set once,
+	 * and the painter is put back to its original colour at the end
+	 * 
+	 * @param painter painter which will be used to paint the arrows
+	 * @param timeElapsed the time elapsed since the start of the song
+	 */
+	void draw(GraphicsPainter painter, int timeElapsed) {
+		Color original = painter.getColor();
+		painter.setFontSize(Column.fontSize());
+		painter.setAntialiased(_quality.antialiased());
+		for (int i = 0; i < _renderGroups.length; i++) {
+			painter.setColor(_renderColors[i]);
+			for (Column c : _renderGroups[i]) {
+				c.draw(painter, timeElapsed, _quality.holdSpacing());
+			}
+		}
+		painter.setColor(original);
+	}
+	/**
+	 * Moves every column straight to a new time, without checking any inputs
+	 * @param timeElapsed the time to move to, in ms since the start of the song
+	 */
+	void seek(int timeElapsed) {
+		for (Column c : _columns) {
+			c.seek(timeElapsed);
+		}
+	}
+	/**
+	 * @param column the index of the column
+	 * @return the periods of the column. The list must not be changed
+	 */
+	List<Period> noteData(int column) {
+		return _columns.get(column).noteData();
+	}
+	/**
+	 * Gives every column new periods, keeping the time. See Column.setNoteData()
+	 * @param noteData the new periods, one list for each column
+	 * @param timeElapsed the current time, in ms since the start of the song
+	 */
+	void setNoteData(List<? extends List<Period>> noteData, int timeElapsed) {
+		for (int i = 0; i < _columns.size(); i++) {
+			_columns.get(i).setNoteData(noteData.get(i), timeElapsed);
+		}
+	}
+	/**
+	 * Forgets whether the notes in a range of time have been hit, in every column
+	 * @param from the start of the range, in ms since the start of the song
+	 * @param to the end of the range, in ms since the start of the song
+	 */
+	void resetJudgement(int from, int to) {
 		for (Column c : _columns) {
-			c.advance(painter, timeElapsed);
+			c.resetJudgement(from, to);
 		}
 	}
+	/**
+	 * @return the x position of the left of this player
+	 */
+	int x() {
+		return _x;
+	}
+	/**
+	 * @return the width of this player
+	 */
+	int width() {
+		return _width;
+	}
 	/**
 	 * Updates the positions of all the columns
 	 * 
@@ -55,10 +205,11 @@ class Player {
 	 * @param x the x position of the left of this player
 	 */
 	void updateSize(int width, int height, int x) {
+		_x = x;
+		_width = width;
 		//x -= _columnPadding*(_columns.size()-1)/2 + Column.width()*_columns.size()/2;
-		for (int i = 0; i < _columns.size(); i++) {
-			_columns.get(i).updateSize(height, x);
-			x += Column.width() + _columnPadding;
+		for (Column c : _columns) {
+			c.updateSize(height, x + (int) (c.panel().position() * (Column.width() + _columnPadding)));
 		}
 	}
 	/**
@@ -67,8 +218,16 @@ class Player {
 	 * @param e the KeyEvent which was generated by the original KeyPressed notification to GameView
 	 */
 	void keyPressed(KeyEvent e) {
+		keyPressed(e.getKeyChar());
+	}
+	/**
+	 * Notifies the column which takes input for a character that its key has been pressed.
+	 * This is also used to play replays back
+	 * @param key the character of the key which was pressed
+	 */
+	void keyPressed(char key) {
 		for (Column col : _columns) {
-			if (col.inputChar() == e.getKeyChar()) {
+			if (col.inputChar() == key) {
 				col.keyPressed();
 				break;
 			}
@@ -80,28 +239,116 @@ class Player {
 	 * @param e the KeyEvent which was generated by the original KeyPressed notification to GameView
 	 */
 	void keyReleased(KeyEvent e) {
+		keyReleased(e.getKeyChar());
+	}
+	/**
+	 * Notifies the column which takes input for a character that its key has been released.
+	 * This is also used to play replays back
+	 * @param key the character of the key which was released
+	 */
+	void keyReleased(char key) {
 		for (Column col : _columns) {
-			if (col.inputChar() == e.getKeyChar()) {
+			if (col.inputChar() == key) {
 				col.keyReleased();
 				break;
 			}
 		}
 	}
 	
+	/**
+	 * Sets the global latency offset of every column
+	 * @param offset the offset in ms. A positive offset means presses arrive late
+	 */
+	void setOffset(int offset) {
+		for (Column c : _columns) {
+			c.setOffset(offset);
+		}
+	}
+	
+	/**
+	 * @param key the character of the key which was pressed
+	 * @param time the time of the press, in ms since the start of the song
+	 * @return the time of the press minus the start of the nearest period in that key's column,
+	 * or Column.NO_NOTE if the key isn't one of this player's or its column has no periods
+	 */
+	int timingError(char key, int time) {
+		for (Column col : _columns) {
+			if (col.inputChar() == key) {
+				return col.timingError(time);
+			}
+		}
+		return Column.NO_NOTE;
+	}
+	
 	/**
 	 * When a column records a successful hit, the player is notified
 	 */
 	void noteHit() {
-		//TODO update the combo etc.
-		System.out.println("hit!");
+		_hits++;
+		_combo++;
+		_maxCombo = Math.max(_maxCombo, _combo);
+		_lastJudgement = JUDGEMENT_HIT;
+		_lastJudgementTime = _time;
 	}
 	
 	/**
-	 * When a column records a successful hit, the player is notified
+	 * When a column records a miss, the player is notified
 	 */
 	void noteMissed() {
-		//TODO update the combo etc.
-		System.out.println("miss!");
+		_misses++;
+		_combo = 0;
+		_lastJudgement = JUDGEMENT_MISS;
+		_lastJudgementTime = _time;
+	}
+	
+	/**
+	 * @return the number of ticks which have been hit
+	 */
+	int hits() {
+		return _hits;
+	}
+	
+	/**
+	 * @return the number of ticks which have been missed
+	 */
+	int misses() {
+		return _misses;
+	}
+	
+	/**
+	 * @return the number of ticks hit in a row since the last miss
+	 */
+	int combo() {
+		return _combo;
+	}
+	
+	/**
+	 * @return the longest combo so far
+	 */
+	int maxCombo() {
+		return _maxCombo;
+	}
+	
+	/**
+	 * @return the score: the fraction of the ticks judged so far which were hit, in millionths
+	 */
+	int score() {
+		int judged = _hits + _misses;
+		return judged == 0 ? 0 : (int) (_hits * 1000000L / judged);
+	}
+	
+	/**
+	 * @return the last judgement, JUDGEMENT_HIT or JUDGEMENT_MISS, or JUDGEMENT_NONE if there hasn't been one
+	 */
+	int lastJudgement() {
+		return _lastJudgement;
+	}
+	
+	/**
+	 * @return the time of the frame the last judgement was made on, in ms since the start of the song
+	 */
+	int lastJudgementTime() {
+		return _lastJudgementTime;
 	}
 
 
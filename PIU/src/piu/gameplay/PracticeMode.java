@@ -0,0 +1,117 @@
+package piu.gameplay;
+
+/**
+ * PracticeMode holds the settings used to drill a part of a song: the playback rate and the A-B loop.
+ * The GameView asks it how far to move the game clock each frame, and does the seeking itself
+ * @author AAA
+ */
+public class PracticeMode {
+	// the slowest and fastest playback rates allowed
+	public static final double MIN_RATE = 0.5;
+	public static final double MAX_RATE = 2.0;
+
+	// how much song time passes for every ms of real time
+	private double _rate = 1.0;
+
+	// the part of a ms which hasn't been added to the clock yet, so slow and fast rates don't drift
+	private double _carry = 0;
+
+	// the start and end of the loop in ms since the start of the song, or -1 if that end of the loop isn't set
+	private int _loopStart = -1;
+	private int _loopEnd = -1;
+
+	/**
+	 * @return how much song time passes for every ms of real time
+	 */
+	public double rate() {
+		return _rate;
+	}
+
+	/**
+	 * Sets the playback rate
+	 * @param rate how much song time passes for every ms of real time
+	 * @throws IllegalArgumentException if the rate is outside of MIN_RATE to MAX_RATE
+	 */
+	public void setRate(double rate) {
+		if (rate < MIN_RATE || rate > MAX_RATE) {
+			throw new IllegalArgumentException("The playback rate must be between " + MIN_RATE + " and " + MAX_RATE + ", not " + rate);
+		}
+		_rate = rate;
+	}
+
+	/**
+	 * Changes the playback rate, keeping it between MIN_RATE and MAX_RATE
+	 * @param change the amount to add to the rate
+	 */
+	public void changeRate(double change) {
+		// round to avoid the rate slowly drifting away from multiples of the change
+		_rate = Math.max(MIN_RATE, Math.min(MAX_RATE, Math.round((_rate + change) * 100) / 100.0));
+	}
+
+	/**
+	 * @param timeElapsed the current time in ms since the start of the song
+	 * @param delay the real time in ms that has passed since the last frame
+	 * @return the time of the next frame, after scaling the delay by the playback rate
+	 */
+	int nextTime(int timeElapsed, int delay) {
+		_carry += delay * _rate;
+		int step = (int) _carry;
+		_carry -= step;
+		return timeElapsed + step;
+	}
+
+	/**
+	 * Sets the start of the loop. If it is after the end of the loop, the end is cleared
+	 * @param time the start of the loop in ms since the start of the song
+	 */
+	public void setLoopStart(int time) {
+		_loopStart = Math.max(0, time);
+		if (_loopEnd != -1 && _loopEnd <= _loopStart) {
+			_loopEnd = -1;
+		}
+	}
+
+	/**
+	 * Sets the end of the loop
+	 * @param time the end of the loop in ms since the start of the song
+	 * @throws IllegalArgumentException if the end is not after the start of the loop
+	 */
+	public void setLoopEnd(int time) {
+		if (time <= Math.max(0, _loopStart)) {
+			throw new IllegalArgumentException("The end of the loop must be after its start");
+		}
+		if (_loopStart == -1) {
+			_loopStart = 0;
+		}
+		_loopEnd = time;
+	}
+
+	/**
+	 * Stops looping
+	 */
+	public void clearLoop() {
+		_loopStart = -1;
+		_loopEnd = -1;
+	}
+
+	/**
+	 * @return whether both ends of the loop are set
+	 */
+	public boolean looping() {
+		return _loopEnd != -1;
+	}
+
+	/**
+	 * @return the start of the loop in ms since the start of the song
+	 */
+	public int loopStart() {
+		return _loopStart;
+	}
+
+	/**
+	 * @return the end of the loop in ms since the start of the song
+	 */
+	public int loopEnd() {
+		return _loopEnd;
+	}
+}
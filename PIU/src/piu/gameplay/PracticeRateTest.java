@@ -0,0 +1,66 @@
+package piu.gameplay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author AAA
+ * Checks that the playback rate of practice mode doesn't change the judgement. A hold is played once held all the way
+ * through and once not pressed at all, at each rate, with the clock moved on by PracticeMode just as the GameView does.
+ * Every rate has to give the same number of hits and misses as a rate of 1.
+ * The program exits with status 1 if any rate differs
+ */
+public class PracticeRateTest {
+	private static final double[] RATES = { 0.5, 1.0, 1.5, 2.0, 0.75, 1.25 };
+
+	// a hold, with a tap right after it
+	private static final int HOLD_START = 1000;
+	private static final int HOLD_END = 3000;
+	private static final int TAP = 3100;
+
+	/**
+	 * Plays the chart at a rate
+	 * @param rate the playback rate
+	 * @param held whether the key is held down for the whole song
+	 * @return the hits and the misses
+	 */
+	private static int[] play(double rate, boolean held) {
+		List<ArrayList<Period>> noteData = new ArrayList<ArrayList<Period>>();
+		ArrayList<Period> notes = new ArrayList<Period>();
+		notes.add(new Period(HOLD_START, HOLD_END));
+		notes.add(new Period(TAP, TAP + 1));
+		noteData.add(notes);
+		char key = GameView.INPUT_CHARACTERS.charAt(0);
+		Player player = new Player(ChartPreprocessor.process(noteData), String.valueOf(key));
+		PracticeMode practice = new PracticeMode();
+		practice.setRate(rate);
+		if (held) {
+			player.keyPressed(key);
+		}
+		for (int time = 0; time < TAP + Column.DISCREPANCY * 2; time = practice.nextTime(time, GameView.DELAY)) {
+			player.update(time);
+		}
+		return new int[] { player.hits(), player.misses() };
+	}
+
+	/**
+	 * Runs the check
+	 */
+	public static void main(String[] args) {
+		int[] heldAtOne = play(1.0, true);
+		int[] missedAtOne = play(1.0, false);
+		boolean passed = true;
+		for (double rate : RATES) {
+			int[] held = play(rate, true);
+			int[] missed = play(rate, false);
+			System.out.println(String.format("rate %.2f: held %d hits %d misses, not pressed %d hits %d misses",
+					rate, held[0], held[1], missed[0], missed[1]));
+			passed &= held[0] == heldAtOne[0] && held[1] == heldAtOne[1] && missed[0] == missedAtOne[0] && missed[1] == missedAtOne[1];
+		}
+		if (!passed) {
+			System.out.println("FAILED: the playback rate changed the judgement");
+			System.exit(1);
+		}
+		System.out.println("passed");
+	}
+}
@@ -0,0 +1,173 @@
+package piu.gameplay;
+
+/**
+ * A QualityGovernor keeps frames inside their time budget by trading away visual detail. The game clock moves on
+ * by one DELAY for every frame painted, so frames which take too long slow the whole song down.
+ * The governor is given the time of every frame, and when too many frames of a window go over the target it lowers
+ * the quality by one step. Once every frame of several windows in a row has been well under the target it raises
+ * the quality by one step again. The gap between the two thresholds and the longer wait before raising the quality
+ * stop it from switching back and forth, and if a raised quality soon has to be lowered again, the wait before
+ * the next raise doubles. Only drawing is affected; the judgement never depends on the quality.
+ * Recording a frame doesn't make any new objects
+ * @author AAA
+ */
+public class QualityGovernor {
+	/**
+	 * The levels of quality, from the most detailed to the cheapest to draw
+	 */
+	public enum Quality {
+		// antialiased glyphs, drawn with the quality rendering hints
+		BEST(1, true, true),
+		// how the game has always looked, with the default rendering hints
+		NORMAL(1, false, true),
+		// half as many arrows drawn along the body of a hold
+		REDUCED(2, false, true),
+		// a quarter as many arrows along holds, and no background art
+		LOW(4, false, false),
+		// an eighth as many arrows along holds, and no background art
+		LOWEST(8, false, false);
+
+		private final int _holdSpacing;
+		private final boolean _antialiased;
+		private final boolean _background;
+
+		private Quality(int holdSpacing, boolean antialiased, boolean background) {
+			_holdSpacing = holdSpacing * Column.MAX_HOLD_ARROW_DENSITY;
+			_antialiased = antialiased;
+			_background = background;
+		}
+
+		/**
+		 * @return the time between the arrows drawn along the body of a hold, in ms.
+		 * This is always a whole number of MAX_HOLD_ARROW_DENSITY, so the arrows drawn line up with the ticks which are judged
+		 */
+		int holdSpacing() {
+			return _holdSpacing;
+		}
+
+		/**
+		 * @return whether the glyphs are antialiased and drawn with the quality rendering hints
+		 */
+		boolean antialiased() {
+			return _antialiased;
+		}
+
+		/**
+		 * @return whether the background art is drawn
+		 */
+		boolean background() {
+			return _background;
+		}
+	}
+
+	private static final Quality[] LEVELS = Quality.values();
+
+	// the number of frames in a window
+	private static final int WINDOW = 50;
+
+	// the quality is lowered as soon as this many frames of the window have gone over the target
+	private static final int OVERLOADED_FRAMES = 10;
+
+	// the quality is raised once every frame of this many windows in a row has taken less than HEADROOM of the target
+	private static final int HEADROOM_WINDOWS = 3;
+	private static final double HEADROOM = 0.6;
+
+	// the most windows waited before raising the quality, after raises which didn't last
+	private static final int MAX_HEADROOM_WINDOWS = 48;
+
+	// the target frame time and the headroom threshold, in ns
+	private long _target;
+	private long _headroom;
+
+	private Quality _quality;
+
+	// the frames recorded in the current window, how many of them went over the target and the longest of them, in ns
+	private int _frames = 0;
+	private int _overloaded = 0;
+	private long _longest = 0;
+
+	// the number of windows in a row which have had headroom, and how many are needed to raise the quality
+	private int _headroomWindows = 0;
+	private int _neededWindows = HEADROOM_WINDOWS;
+
+	// the frames since the quality was last raised, up to the point at which the raise counts as having lasted
+	private int _sinceRaise = Integer.MAX_VALUE;
+
+	/**
+	 * Creates a new QualityGovernor aiming for frames which take at most 80% of GameView.DELAY,
+	 * leaving the rest of the frame for Swing
+	 * @param quality the quality to start at
+	 */
+	public QualityGovernor(Quality quality) {
+		_quality = quality;
+		setTarget(GameView.DELAY * 4 / 5);
+	}
+
+	/**
+	 * @param target the longest a frame should take, in ms
+	 */
+	public void setTarget(int target) {
+		_target = target * 1000000L;
+		_headroom = (long) (_target * HEADROOM);
+	}
+
+	/**
+	 * @return the current quality
+	 */
+	public Quality quality() {
+		return _quality;
+	}
+
+	/**
+	 * Records the time taken by a frame, and changes the quality if the recent frames call for it
+	 * @param nanos the time taken to paint the frame, in ns
+	 * @return the quality to draw the next frame at
+	 */
+	public Quality frame(long nanos) {
+		_frames++;
+		_longest = Math.max(_longest, nanos);
+		if (_sinceRaise < WINDOW * HEADROOM_WINDOWS && ++_sinceRaise == WINDOW * HEADROOM_WINDOWS) {
+			// the last raise has lasted, so the next one needn't wait any longer than usual
+			_neededWindows = HEADROOM_WINDOWS;
+		}
+		if (nanos > _target && ++_overloaded >= OVERLOADED_FRAMES) {
+			_headroomWindows = 0;
+			if (_sinceRaise < WINDOW * HEADROOM_WINDOWS) {
+				_neededWindows = Math.min(MAX_HEADROOM_WINDOWS, _neededWindows * 2);
+				_sinceRaise = Integer.MAX_VALUE;
+			}
+			if (_quality.ordinal() < LEVELS.length - 1) {
+				change(LEVELS[_quality.ordinal() + 1]);
+			} else {
+				startWindow();
+			}
+			return _quality;
+		}
+		if (_frames == WINDOW) {
+			_headroomWindows = _longest < _headroom ? _headroomWindows + 1 : 0;
+			if (_headroomWindows >= _neededWindows && _quality.ordinal() > 0) {
+				_headroomWindows = 0;
+				_sinceRaise = 0;
+				change(LEVELS[_quality.ordinal() - 1]);
+			} else {
+				startWindow();
+			}
+		}
+		return _quality;
+	}
+
+	/**
+	 * Changes the quality, and starts a new window so that only frames drawn at the new quality are judged by it
+	 * @param quality the new quality
+	 */
+	private void change(Quality quality) {
+		_quality = quality;
+		startWindow();
+	}
+
+	private void startWindow() {
+		_frames = 0;
+		_overloaded = 0;
+		_longest = 0;
+	}
+}
@@ -0,0 +1,302 @@
+package piu.gameplay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Replay holds the input of one session, as written by a ReplayRecorder, along with the judgement counts it ended with.
+ * The file is laid out as:
+ * the magic bytes "PIUR" and a version byte,
+ * the song name (as written by DataOutputStream.writeUTF),
+ * the 32 byte SHA-256 hash of the preprocessed chart (see chartHash()),
+ * the number of players, the number of columns each player has, and the latency offset at the start,
+ * then one entry for every key press or release: the time since the last event and then (column + 1) * 2 + (1 if pressed),
+ * or for every change of the latency offset: the time since the last event, then 1, then the new offset,
+ * then a 0 where the next event's column would be, to end the events,
+ * then the time of the last frame, and the hits, misses and max combo of each player.
+ * Every number after the hash is an unsigned varint: 7 bits per byte, lowest bits first, with the top bit set on every byte but the last.
+ * Offsets can be negative, so they are zigzag encoded first (0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...).
+ * Times are game clock times in ms, which are always a multiple of the frame length, so most events take two or three bytes
+ * @author AAA
+ */
+public class Replay {
+	static final byte[] MAGIC = { 'P', 'I', 'U', 'R' };
+	static final int VERSION = 2;
+	// the code used instead of a column for a change of the latency offset
+	static final int OFFSET_CHANGE = 1;
+	static final int HASH_LENGTH = 32;
+
+	private final String _song;
+	private final byte[] _chartHash;
+	private final int _numPlayers;
+	private final int _numCols;
+	private final int _initialOffset;
+	// the time of each event, and its column (across all players) times 2, plus 1 if it is a press, or -1 for an offset change
+	private final int[] _times;
+	private final int[] _events;
+	// the new offset of each offset change
+	private final int[] _offsets;
+	private final int _endTime;
+	// the hits, misses and max combo of each player, one row per player
+	private final int[][] _judgements;
+
+	Replay(String song, byte[] chartHash, int numPlayers, int numCols, int initialOffset, int[] times, int[] events, int[] offsets,
+			int endTime, int[][] judgements) {
+		_song = song;
+		_chartHash = chartHash;
+		_numPlayers = numPlayers;
+		_numCols = numCols;
+		_initialOffset = initialOffset;
+		_times = times;
+		_events = events;
+		_offsets = offsets;
+		_endTime = endTime;
+		_judgements = judgements;
+	}
+
+	/**
+	 * Reads a replay file
+	 * @param file the replay file
+	 * @return the replay
+	 * @throws IOException if the file can't be read, or isn't a complete replay
+	 */
+	public static Replay read(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			input.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || input.readUnsignedByte() != VERSION) {
+				throw new IOException(file + " isn't a replay, or is from a different version");
+			}
+			String song = input.readUTF();
+			byte[] chartHash = new byte[HASH_LENGTH];
+			input.readFully(chartHash);
+			int numPlayers = readVarInt(input);
+			int numCols = readVarInt(input);
+			int initialOffset = fromZigZag(readVarInt(input));
+
+			int[] times = new int[64];
+			int[] events = new int[64];
+			int[] offsets = new int[64];
+			int count = 0;
+			int time = 0;
+			while (true) {
+				int delta = readVarInt(input);
+				int event = readVarInt(input);
+				if (event == 0) {
+					break;
+				}
+				if (count == times.length) {
+					times = Arrays.copyOf(times, count * 2);
+					events = Arrays.copyOf(events, count * 2);
+					offsets = Arrays.copyOf(offsets, count * 2);
+				}
+				time += delta;
+				times[count] = time;
+				if (event == OFFSET_CHANGE) {
+					events[count] = -1;
+					offsets[count] = fromZigZag(readVarInt(input));
+				} else {
+					events[count] = event - 2;
+				}
+				count++;
+			}
+
+			int endTime = readVarInt(input);
+			int[][] judgements = new int[numPlayers][3];
+			for (int[] player : judgements) {
+				for (int i = 0; i < player.length; i++) {
+					player[i] = readVarInt(input);
+				}
+			}
+			return new Replay(song, chartHash, numPlayers, numCols, initialOffset,
+					Arrays.copyOf(times, count), Arrays.copyOf(events, count), Arrays.copyOf(offsets, count), endTime, judgements);
+		} catch (EOFException e) {
+			throw new IOException(file + " ends early; the session may not have finished", e);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Works out the hash which identifies a chart, so that a replay is only ever played against the chart it was recorded on
+	 * @param noteData the preprocessed note data of the chart
+	 * @return the SHA-256 hash of every period's start and end, with a separator after each column
+	 */
+	public static byte[] chartHash(List<? extends List<Period>> noteData) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[8];
+			for (List<Period> column : noteData) {
+				for (Period p : column) {
+					putInt(buffer, 0, p.start());
+					putInt(buffer, 4, p.end());
+					digest.update(buffer);
+				}
+				putInt(buffer, 0, -1);
+				digest.update(buffer, 0, 4);
+			}
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Writes an unsigned varint
+	 */
+	static void writeVarInt(OutputStream output, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.write(value);
+	}
+
+	/**
+	 * @return a signed number turned into an unsigned one, so that numbers close to 0 stay small
+	 */
+	static int toZigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * @return the signed number which toZigZag turned into value
+	 */
+	static int fromZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Reads an unsigned varint
+	 */
+	static int readVarInt(InputStream input) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = input.read();
+			if (b == -1) {
+				throw new EOFException();
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("A varint in the replay is too long");
+	}
+
+	/**
+	 * @return the name of the song the replay was recorded on
+	 */
+	public String song() {
+		return _song;
+	}
+
+	/**
+	 * @return the hash of the chart the replay was recorded on
+	 */
+	public byte[] chartHash() {
+		return _chartHash.clone();
+	}
+
+	/**
+	 * @return the number of players
+	 */
+	public int numPlayers() {
+		return _numPlayers;
+	}
+
+	/**
+	 * @return the number of columns each player has
+	 */
+	public int numCols() {
+		return _numCols;
+	}
+
+	/**
+	 * @return the latency offset at the start of the session, in ms
+	 */
+	public int initialOffset() {
+		return _initialOffset;
+	}
+
+	/**
+	 * @return the number of key presses, releases and offset changes
+	 */
+	public int numEvents() {
+		return _times.length;
+	}
+
+	/**
+	 * @param index the index of the event
+	 * @return the game clock time of the event, in ms
+	 */
+	int eventTime(int index) {
+		return _times[index];
+	}
+
+	/**
+	 * @param index the index of the event
+	 * @return the column of the event, counting across all the players
+	 */
+	int eventColumn(int index) {
+		return _events[index] >> 1;
+	}
+
+	/**
+	 * @param index the index of the event
+	 * @return whether the event is a change of the latency offset, rather than a key press or release
+	 */
+	boolean eventIsOffsetChange(int index) {
+		return _events[index] == -1;
+	}
+
+	/**
+	 * @param index the index of an offset change
+	 * @return the new latency offset, in ms
+	 */
+	int eventOffset(int index) {
+		return _offsets[index];
+	}
+
+	/**
+	 * @param index the index of the event
+	 * @return whether the event is a key press, rather than a release
+	 */
+	boolean eventPressed(int index) {
+		return (_events[index] & 1) == 1;
+	}
+
+	/**
+	 * @return the time of the frame after the last frame of the session
+	 */
+	public int endTime() {
+		return _endTime;
+	}
+
+	/**
+	 * @param player the index of the player
+	 * @return the player's hits, misses and max combo at the end of the session
+	 */
+	public int[] judgements(int player) {
+		return _judgements[player].clone();
+	}
+}
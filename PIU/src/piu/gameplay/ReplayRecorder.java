@@ -0,0 +1,130 @@
+package piu.gameplay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A ReplayRecorder writes the key presses and releases of a session to a replay file as they happen.
+ * The layout of the file is described in Replay. Repeated presses from a held key are left out,
+ * since they don't change anything
+ * @author AAA
+ */
+class ReplayRecorder {
+	// where replays are saved, and the end of their file names
+	static final String DIRECTORY = "replays";
+	static final String EXTENSION = ".piur";
+
+	private final DataOutputStream _output;
+	// whether each column's key is held down, across all the players
+	private final boolean[] _pressed;
+	private int _lastTime = 0;
+	private boolean _finished = false;
+
+	/**
+	 * Creates the replay file and writes its header
+	 * @param file the replay file
+	 * @param song the name of the song
+	 * @param noteData the preprocessed note data of the song
+	 * @param numPlayers the number of players
+	 * @param offset the latency offset at the start, in ms
+	 * @throws IOException if the file can't be written
+	 */
+	ReplayRecorder(File file, String song, List<? extends List<Period>> noteData, int numPlayers, int offset) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create the directory " + directory);
+		}
+		_output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		_pressed = new boolean[noteData.size() * numPlayers];
+		_output.write(Replay.MAGIC);
+		_output.writeByte(Replay.VERSION);
+		_output.writeUTF(song);
+		_output.write(Replay.chartHash(noteData));
+		Replay.writeVarInt(_output, numPlayers);
+		Replay.writeVarInt(_output, noteData.size());
+		Replay.writeVarInt(_output, Replay.toZigZag(offset));
+	}
+
+	/**
+	 * @param song the name of the song
+	 * @return a new file in the replays directory, named after the song and the current time
+	 */
+	static File fileFor(String song) {
+		return new File(DIRECTORY, song + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + EXTENSION);
+	}
+
+	/**
+	 * Records a key press or release
+	 * @param time the game clock time, in ms
+	 * @param column the column of the key, counting across all the players
+	 * @param pressed whether the key was pressed, rather than released
+	 */
+	void record(int time, int column, boolean pressed) {
+		if (_finished || column < 0 || column >= _pressed.length || _pressed[column] == pressed) {
+			return;
+		}
+		_pressed[column] = pressed;
+		try {
+			Replay.writeVarInt(_output, time - _lastTime);
+			Replay.writeVarInt(_output, (column + 1) * 2 + (pressed ? 1 : 0));
+			_lastTime = time;
+		} catch (IOException e) {
+			e.printStackTrace();
+			_finished = true;
+		}
+	}
+
+	/**
+	 * Records a change of the latency offset
+	 * @param time the game clock time, in ms
+	 * @param offset the new offset, in ms
+	 */
+	void recordOffset(int time, int offset) {
+		if (_finished) {
+			return;
+		}
+		try {
+			Replay.writeVarInt(_output, time - _lastTime);
+			Replay.writeVarInt(_output, Replay.OFFSET_CHANGE);
+			Replay.writeVarInt(_output, Replay.toZigZag(offset));
+			_lastTime = time;
+		} catch (IOException e) {
+			e.printStackTrace();
+			_finished = true;
+		}
+	}
+
+	/**
+	 * Ends the events, writes the final judgement counts and closes the file. Nothing more is recorded after this
+	 * @param endTime the time of the frame after the last frame of the session
+	 * @param players the players, whose judgement counts are written
+	 */
+	void finish(int endTime, List<Player> players) {
+		if (_finished) {
+			return;
+		}
+		_finished = true;
+		try {
+			try {
+				Replay.writeVarInt(_output, 0);
+				Replay.writeVarInt(_output, 0);
+				Replay.writeVarInt(_output, endTime);
+				for (Player p : players) {
+					Replay.writeVarInt(_output, p.hits());
+					Replay.writeVarInt(_output, p.misses());
+					Replay.writeVarInt(_output, p.maxCombo());
+				}
+			} finally {
+				_output.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
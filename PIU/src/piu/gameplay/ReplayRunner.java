@@ -0,0 +1,163 @@
+package piu.gameplay;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import piu.utilities.PIUFileReader;
+import piu.utilities.WorkerPool;
+
+/**
+ * The ReplayRunner plays a replay back through the same Player and Column code as the game, using a simulated clock
+ * which moves on one frame at a time as fast as it can, with nothing drawn. The events of each frame are given to the
+ * players before the frame is updated, just as GameView gets key events between frames, so the judgement counts
+ * come out exactly the same as in the recorded session.
+ * All methods are static; this will never be instantiated
+ * @author AAA
+ */
+public class ReplayRunner {
+	/**
+	 * The constructor is private and does nothing. It will never be called,
+	 * to ensure that this class is never instantiated
+	 */
+	private ReplayRunner() {}
+
+	/**
+	 * Plays a replay back
+	 * @param replay the replay
+	 * @param noteData the preprocessed note data of the chart the replay was recorded on
+	 * @return the hits, misses and max combo of each player at the end, one row per player
+	 */
+	public static int[][] run(Replay replay, List<ArrayList<Period>> noteData) {
+		int numCols = replay.numCols();
+		List<Player> players = new ArrayList<Player>();
+		for (int i = 0; i < replay.numPlayers(); i++) {
+			Player player = new Player(ChartPreprocessor.copy(noteData), GameView.INPUT_CHARACTERS.substring(i*numCols, (i+1)*numCols));
+			player.setOffset(replay.initialOffset());
+			players.add(player);
+		}
+
+		int next = 0;
+		for (int time = 0; time < replay.endTime(); time += GameView.DELAY) {
+			// these events happened between the last frame and this one
+			while (next < replay.numEvents() && replay.eventTime(next) <= time) {
+				if (replay.eventIsOffsetChange(next)) {
+					for (Player p : players) {
+						p.setOffset(replay.eventOffset(next));
+					}
+					next++;
+					continue;
+				}
+				int column = replay.eventColumn(next);
+				char key = GameView.INPUT_CHARACTERS.charAt(column);
+				if (replay.eventPressed(next)) {
+					players.get(column / numCols).keyPressed(key);
+				} else {
+					players.get(column / numCols).keyReleased(key);
+				}
+				next++;
+			}
+			for (Player p : players) {
+				p.update(time);
+			}
+		}
+
+		int[][] judgements = new int[players.size()][];
+		for (int i = 0; i < players.size(); i++) {
+			Player p = players.get(i);
+			judgements[i] = new int[] { p.hits(), p.misses(), p.maxCombo() };
+		}
+		return judgements;
+	}
+
+	/**
+	 * Plays a replay back against its song's chart, and checks that it ends with the recorded judgement counts
+	 * @param file the replay file
+	 * @return null if the replay matches, otherwise a description of what went wrong
+	 * @throws IOException if the replay can't be read
+	 */
+	public static String verify(File file) throws IOException {
+		Replay replay = Replay.read(file);
+		List<ArrayList<Period>> noteData = ChartPreprocessor.process(PIUFileReader.getNoteData(replay.song()));
+		if (!Arrays.equals(Replay.chartHash(noteData), replay.chartHash())) {
+			return "the chart of " + replay.song() + " has changed since the replay was recorded";
+		}
+		int[][] judgements = run(replay, noteData);
+		for (int i = 0; i < judgements.length; i++) {
+			if (!Arrays.equals(judgements[i], replay.judgements(i))) {
+				return "player " + (i + 1) + " ended with " + Arrays.toString(judgements[i])
+						+ " instead of " + Arrays.toString(replay.judgements(i)) + " (hits, misses, max combo)";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Verifies every replay in a directory in parallel, printing the result of each one
+	 * @param directory the directory holding the replay files
+	 * @return the number of replays which didn't match or couldn't be read
+	 * @throws InterruptedException if the verification was interrupted
+	 */
+	public static int verifyDirectory(File directory) throws InterruptedException {
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(ReplayRecorder.EXTENSION);
+			}
+		});
+		if (files == null) {
+			throw new IllegalArgumentException(directory + " isn't a directory");
+		}
+		Arrays.sort(files);
+
+		ExecutorService workers = WorkerPool.newPool("replay-verifier");
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (final File file : files) {
+			results.add(workers.submit(new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					return verify(file);
+				}
+			}));
+		}
+		int failures = 0;
+		try {
+			for (int i = 0; i < files.length; i++) {
+				String problem;
+				try {
+					problem = results.get(i).get();
+				} catch (ExecutionException e) {
+					problem = "couldn't be read: " + e.getCause().getMessage();
+				}
+				if (problem == null) {
+					System.out.println("ok    " + files[i].getName());
+				} else {
+					failures++;
+					System.out.println("FAIL  " + files[i].getName() + ": " + problem);
+				}
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+		return failures;
+	}
+
+	/**
+	 * Verifies every replay in a directory.
+	 * The argument is the directory, which is "replays" if it isn't given. Exits with status 1 if any replay fails
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		File directory = new File(args.length > 0 ? args[0] : ReplayRecorder.DIRECTORY);
+		long startTime = System.nanoTime();
+		int failures = verifyDirectory(directory);
+		System.out.println(failures + " failed, in " + (System.nanoTime() - startTime) / 1000000 + "ms");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,144 @@
+package piu.gameplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A ScoreExporter publishes the state of every player to a small memory-mapped file once a frame, for stream overlays and other
+ * local programs to read. Writing is a few stores into mapped memory, with no system calls and no new objects, so it has no effect
+ * on the frame. Readers map the same file and read it without system calls either; ScoreReader is one.
+ * <p>
+ * The file is little endian, made of 32 bit ints:
+ * <pre>
+ * offset  field
+ *  0      magic, the bytes "PIUS"
+ *  4      VERSION
+ *  8      sequence: odd while the game is writing, and increased by 2 for every frame published.
+ *         It carries on from the file's last value when the game starts again
+ * 12      the number of players
+ * 16      the song time, in ms since the start of the song
+ * 20      reserved, always 0
+ * 24      the first player's block, then one block of PLAYER_BYTES (32) for each other player:
+ *         +0  score, the fraction of the ticks judged which were hit, in millionths
+ *         +4  combo
+ *         +8  max combo
+ *         +12 hits
+ *         +16 misses
+ *         +20 last judgement: 0 none, 1 hit, 2 miss
+ *         +24 the song time of the last judgement, in ms
+ *         +28 reserved, always 0
+ * </pre>
+ * The sequence is a seqlock. To read a consistent frame, read the sequence, and start again if it is odd; read the fields;
+ * then read the sequence again, and start again if it has changed.
+ * If the game dies in the middle of writing, the sequence is left odd until it starts again, so readers shouldn't wait
+ * on an odd sequence forever. ScoreReader gives up once the same odd sequence has been seen for half a second,
+ * and read() throws an IOException saying the game seems to have stopped while writing
+ * @author AAA
+ */
+public class ScoreExporter {
+	static final int MAGIC = 'P' | 'I' << 8 | 'U' << 16 | 'S' << 24;
+	static final int VERSION = 1;
+	static final int SEQUENCE = 8;
+	static final int NUM_PLAYERS = 12;
+	static final int SONG_TIME = 16;
+	static final int HEADER_BYTES = 24;
+	static final int PLAYER_BYTES = 32;
+
+	// the offsets of the fields of a player's block
+	static final int SCORE = 0;
+	static final int COMBO = 4;
+	static final int MAX_COMBO = 8;
+	static final int HITS = 12;
+	static final int MISSES = 16;
+	static final int LAST_JUDGEMENT = 20;
+	static final int LAST_JUDGEMENT_TIME = 24;
+
+	// the default file, in the temporary directory so that it is in memory on most systems
+	public static final File DEFAULT_FILE = new File(System.getProperty("java.io.tmpdir"), "piu-scores.bin");
+
+	// gives ordered access to the sequence, so that readers never see it change before or after the fields it protects
+	static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final RandomAccessFile _file;
+	private final MappedByteBuffer _buffer;
+	private final int _numPlayers;
+	private int _sequence = 0;
+
+	/**
+	 * Creates the file and maps it
+	 * @param file the file to publish to
+	 * @param numPlayers the number of players
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	public ScoreExporter(File file, int numPlayers) throws IOException {
+		_numPlayers = numPlayers;
+		_file = new RandomAccessFile(file, "rw");
+		int size = HEADER_BYTES + numPlayers * PLAYER_BYTES;
+		// the file is never made shorter, since a reader which still has it mapped would fail reading past the end
+		if (_file.length() < size) {
+			_file.setLength(size);
+		}
+		_buffer = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		_buffer.order(ByteOrder.LITTLE_ENDIAN);
+		// a file left by an earlier run may have readers polling it, so its sequence carries on and is made odd
+		// before anything else is touched; otherwise they could take half cleared fields for a finished frame
+		if (_buffer.getInt(0) == MAGIC) {
+			_sequence = (int) INT.getAcquire(_buffer, SEQUENCE);
+		}
+		_sequence += (_sequence & 1) == 0 ? 1 : 2;
+		INT.setOpaque(_buffer, SEQUENCE, _sequence);
+		VarHandle.storeStoreFence();
+		for (int i = 0; i < size; i += 4) {
+			if (i != SEQUENCE) {
+				_buffer.putInt(i, 0);
+			}
+		}
+		_buffer.putInt(0, MAGIC);
+		_buffer.putInt(4, VERSION);
+		_buffer.putInt(NUM_PLAYERS, numPlayers);
+		INT.setRelease(_buffer, SEQUENCE, ++_sequence);
+	}
+
+	/**
+	 * Publishes the state of the players. This must only be called from one thread
+	 * @param songTime the song time, in ms
+	 * @param players the players
+	 */
+	public void publish(int songTime, List<Player> players) {
+		// an odd sequence tells readers that the fields are changing
+		INT.setOpaque(_buffer, SEQUENCE, ++_sequence);
+		VarHandle.storeStoreFence();
+		_buffer.putInt(SONG_TIME, songTime);
+		for (int i = 0; i < _numPlayers && i < players.size(); i++) {
+			Player p = players.get(i);
+			int block = HEADER_BYTES + i * PLAYER_BYTES;
+			_buffer.putInt(block + SCORE, p.score());
+			_buffer.putInt(block + COMBO, p.combo());
+			_buffer.putInt(block + MAX_COMBO, p.maxCombo());
+			_buffer.putInt(block + HITS, p.hits());
+			_buffer.putInt(block + MISSES, p.misses());
+			_buffer.putInt(block + LAST_JUDGEMENT, p.lastJudgement());
+			_buffer.putInt(block + LAST_JUDGEMENT_TIME, p.lastJudgementTime());
+		}
+		// the fields are all written before the sequence is even again
+		INT.setRelease(_buffer, SEQUENCE, ++_sequence);
+	}
+
+	/**
+	 * Stops publishing. The file is left, with the last frame published in it
+	 */
+	public void close() {
+		try {
+			_file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
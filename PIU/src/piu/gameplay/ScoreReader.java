@@ -0,0 +1,199 @@
+package piu.gameplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A ScoreReader reads the scores published by a ScoreExporter, from another process. The file is mapped once,
+ * and again only if the game starts again with more players, so each read is only a few loads from memory. The layout of the file is described in ScoreExporter
+ * @author AAA
+ */
+public class ScoreReader {
+	// how long the sequence can stay odd before the game is taken to have stopped in the middle of writing, in ns.
+	// Writing a frame takes microseconds, so this is only reached if the game has died or hung
+	static final long STALE_WRITER_NANOS = 500 * 1000000L;
+
+	private final File _file;
+	private MappedByteBuffer _buffer;
+
+	/**
+	 * A Snapshot is the state of every player on one frame
+	 */
+	public static class Snapshot {
+		private final int _songTime;
+		// the fields of each player, in the order of a player's block
+		private final int[][] _players;
+
+		Snapshot(int songTime, int[][] players) {
+			_songTime = songTime;
+			_players = players;
+		}
+
+		/**
+		 * @return the song time, in ms since the start of the song
+		 */
+		public int songTime() {
+			return _songTime;
+		}
+
+		/**
+		 * @return the number of players
+		 */
+		public int numPlayers() {
+			return _players.length;
+		}
+
+		/**
+		 * @param player the index of the player
+		 * @return the fraction of the ticks judged which were hit, in millionths
+		 */
+		public int score(int player) {
+			return _players[player][ScoreExporter.SCORE / 4];
+		}
+
+		public int combo(int player) {
+			return _players[player][ScoreExporter.COMBO / 4];
+		}
+
+		public int maxCombo(int player) {
+			return _players[player][ScoreExporter.MAX_COMBO / 4];
+		}
+
+		public int hits(int player) {
+			return _players[player][ScoreExporter.HITS / 4];
+		}
+
+		public int misses(int player) {
+			return _players[player][ScoreExporter.MISSES / 4];
+		}
+
+		/**
+		 * @param player the index of the player
+		 * @return the last judgement: 0 for none, 1 for a hit, 2 for a miss
+		 */
+		public int lastJudgement(int player) {
+			return _players[player][ScoreExporter.LAST_JUDGEMENT / 4];
+		}
+
+		public int lastJudgementTime(int player) {
+			return _players[player][ScoreExporter.LAST_JUDGEMENT_TIME / 4];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder("time " + _songTime);
+			for (int i = 0; i < _players.length; i++) {
+				text.append(String.format(" | P%d score %.2f%% combo %d (max %d) hits %d misses %d last %s", i + 1, score(i) / 10000.0,
+						combo(i), maxCombo(i), hits(i), misses(i), new String[] { "-", "HIT", "MISS" }[lastJudgement(i)]));
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Maps the file
+	 * @param file the file a ScoreExporter is publishing to
+	 * @throws IOException if the file can't be read, or wasn't made by a ScoreExporter of this version
+	 */
+	public ScoreReader(File file) throws IOException {
+		_file = file;
+		map();
+		if (_buffer.limit() < ScoreExporter.HEADER_BYTES || _buffer.getInt(0) != ScoreExporter.MAGIC
+				|| _buffer.getInt(4) != ScoreExporter.VERSION) {
+			throw new IOException(file + " isn't a score file, or is from a different version");
+		}
+	}
+
+	/**
+	 * Maps the whole file, which may have grown since it was last mapped
+	 * @throws IOException if the file can't be read
+	 */
+	private void map() throws IOException {
+		RandomAccessFile input = new RandomAccessFile(_file, "r");
+		try {
+			_buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+		} finally {
+			// the mapping stays valid after the file is closed
+			input.close();
+		}
+		_buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Reads a consistent frame, trying again while the game is in the middle of writing one.
+	 * If the game has started again with more players, the file is mapped again
+	 * @return the state of every player
+	 * @throws IOException if the file has to be mapped again and can't be, or is too short for its number of players,
+	 * or if the game has been in the middle of writing the same frame for STALE_WRITER_NANOS, which means it stopped while writing
+	 */
+	public Snapshot read() throws IOException {
+		// the odd sequence being waited on, and when the wait for it started
+		int writing = 0;
+		long writingSince = 0;
+		while (true) {
+			int before = (int) ScoreExporter.INT.getAcquire(_buffer, ScoreExporter.SEQUENCE);
+			if ((before & 1) == 1) {
+				long now = System.nanoTime();
+				if (before != writing) {
+					writing = before;
+					writingSince = now;
+				} else if (now - writingSince > STALE_WRITER_NANOS) {
+					throw new IOException(_file + " has been in the middle of a write for over " + STALE_WRITER_NANOS / 1000000
+							+ "ms, so the game seems to have stopped while writing it");
+				}
+				Thread.onSpinWait();
+				continue;
+			}
+			// the number of players is read under the sequence too, since it changes when the game starts again
+			int numPlayers = _buffer.getInt(ScoreExporter.NUM_PLAYERS);
+			long size = ScoreExporter.HEADER_BYTES + (long) numPlayers * ScoreExporter.PLAYER_BYTES;
+			if (numPlayers < 0 || size > _buffer.limit()) {
+				VarHandle.loadLoadFence();
+				if ((int) ScoreExporter.INT.getOpaque(_buffer, ScoreExporter.SEQUENCE) != before) {
+					continue;
+				}
+				int mapped = _buffer.limit();
+				map();
+				if (numPlayers < 0 || _buffer.limit() <= mapped) {
+					throw new IOException(_file + " has " + numPlayers + " players, which don't fit in its " + _buffer.limit() + " bytes");
+				}
+				continue;
+			}
+			int[][] players = new int[numPlayers][ScoreExporter.PLAYER_BYTES / 4];
+			int songTime = _buffer.getInt(ScoreExporter.SONG_TIME);
+			for (int i = 0; i < numPlayers; i++) {
+				int block = ScoreExporter.HEADER_BYTES + i * ScoreExporter.PLAYER_BYTES;
+				for (int field = 0; field < players[i].length; field++) {
+					players[i][field] = _buffer.getInt(block + field * 4);
+				}
+			}
+			// the fields are all read before the sequence is checked again
+			VarHandle.loadLoadFence();
+			int after = (int) ScoreExporter.INT.getOpaque(_buffer, ScoreExporter.SEQUENCE);
+			if (after == before) {
+				return new Snapshot(songTime, players);
+			}
+		}
+	}
+
+	/**
+	 * Prints the scores ten times a second, or why they can't be read, until the game publishes again.
+	 * The argument is the score file, which is ScoreExporter.DEFAULT_FILE if it isn't given
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		ScoreReader reader = new ScoreReader(args.length > 0 ? new File(args[0]) : ScoreExporter.DEFAULT_FILE);
+		while (true) {
+			try {
+				System.out.println(reader.read());
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+			Thread.sleep(100);
+		}
+	}
+}
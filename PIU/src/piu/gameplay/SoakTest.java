@@ -0,0 +1,390 @@
+package piu.gameplay;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import piu.utilities.PIUFileReader;
+
+/**
+ * @author AAA
+ * Runs the game for a long time to find slow leaks and slow downs which a short run doesn't show.
+ * A GameView plays a chart (usually one from the StressChartGenerator) into an offscreen image as fast as it can, with scripted input
+ * which hits most of the arrows, starting the chart again whenever it ends. Every REPORT_INTERVAL it prints the frame time percentiles,
+ * the live heap and the GC pauses. At the end the results after the warm up are compared to a stored baseline, and the program
+ * exits with status 1 if any of them has got worse by more than TOLERANCE
+ */
+public class SoakTest {
+	// how often a line is printed, and how long the warm up is, in ms of real time. The warm up isn't counted in the results
+	private static final int REPORT_INTERVAL = 60000;
+	private static final int WARM_UP = 60000;
+
+	// how much worse than the baseline a result can be before it counts as a regression
+	private static final double TOLERANCE = 0.2;
+
+	// the results, with the smallest change in each which can count as a regression, so that noise in tiny numbers is ignored
+	private static final String[] METRICS = { "frameP50Ms", "frameP95Ms", "frameP99Ms", "gcMaxPauseMs", "heapGrowthMbPerHour" };
+	private static final double[] MIN_REGRESSION = { 0.05, 0.1, 0.2, 5, 1 };
+
+	private static final String DEFAULT_BASELINE = "soakBaseline.properties";
+
+	/**
+	 * A FrameTimes is a histogram of frame times with 10 microsecond buckets, so that percentiles can be found
+	 * over hours of frames in a fixed amount of memory
+	 */
+	private static class FrameTimes {
+		private static final int BUCKET_NANOS = 10000;
+		private static final int BUCKETS = 100000;
+
+		private final long[] _counts = new long[BUCKETS];
+		private long _frames = 0;
+		private long _max = 0;
+
+		void add(long nanos) {
+			_counts[(int) Math.min(BUCKETS - 1, nanos / BUCKET_NANOS)]++;
+			_frames++;
+			_max = Math.max(_max, nanos);
+		}
+
+		void addAll(FrameTimes other) {
+			for (int i = 0; i < BUCKETS; i++) {
+				_counts[i] += other._counts[i];
+			}
+			_frames += other._frames;
+			_max = Math.max(_max, other._max);
+		}
+
+		void clear() {
+			Arrays.fill(_counts, 0);
+			_frames = 0;
+			_max = 0;
+		}
+
+		long frames() {
+			return _frames;
+		}
+
+		/**
+		 * @param fraction the fraction of frames, from 0 to 1
+		 * @return the time in ms which that fraction of frames took no longer than, to the top of its bucket
+		 */
+		double percentile(double fraction) {
+			long target = (long) Math.ceil(fraction * _frames);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += _counts[i];
+				if (seen >= target && seen > 0) {
+					return (i + 1) * BUCKET_NANOS / 1e6;
+				}
+			}
+			return 0;
+		}
+
+		double maxMs() {
+			return _max / 1e6;
+		}
+	}
+
+	/**
+	 * A GcPauses listens to the garbage collectors and keeps the number of pauses and the longest one.
+	 * Collections asked for by System.gc() are left out, since the soak test makes those itself to measure the live heap
+	 */
+	private static class GcPauses implements NotificationListener {
+		private long _count = 0;
+		private long _max = 0;
+
+		GcPauses() {
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				if (gc instanceof NotificationEmitter) {
+					((NotificationEmitter) gc).addNotificationListener(this, null, null);
+				}
+			}
+		}
+
+		@Override
+		public synchronized void handleNotification(Notification notification, Object handback) {
+			if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+				return;
+			}
+			GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+			if (info.getGcCause().equals("System.gc()")) {
+				return;
+			}
+			_count++;
+			_max = Math.max(_max, info.getGcInfo().getDuration());
+		}
+
+		/**
+		 * @return the number of pauses and the longest pause in ms since the last call, starting again from nothing
+		 */
+		synchronized long[] takeCountAndMax() {
+			long[] result = { _count, _max };
+			_count = 0;
+			_max = 0;
+			return result;
+		}
+	}
+
+	/**
+	 * A Bot plays the chart by pressing each column's key just before its arrows arrive and holding it to the end of each period.
+	 * Every SKIP-th arrow is left alone, so there are misses as well as hits. The key events are made up front
+	 */
+	private static class Bot {
+		private static final int PRESS_EARLY = 20;
+		private static final int TAP_LENGTH = 60;
+		private static final int SKIP = 20;
+
+		private final List<ArrayList<Period>> _noteData;
+		private final KeyEvent[] _presses;
+		private final KeyEvent[] _releases;
+		private final int[] _next;
+		private final int[] _releaseAt;
+		private final boolean[] _pressed;
+
+		Bot(GameView game, List<ArrayList<Period>> noteData) {
+			_noteData = noteData;
+			int numCols = noteData.size();
+			_presses = new KeyEvent[numCols];
+			_releases = new KeyEvent[numCols];
+			for (int i = 0; i < numCols; i++) {
+				char key = GameView.INPUT_CHARACTERS.charAt(i);
+				_presses[i] = new KeyEvent(game, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_UNDEFINED, key);
+				_releases[i] = new KeyEvent(game, KeyEvent.KEY_RELEASED, 0, 0, KeyEvent.VK_UNDEFINED, key);
+			}
+			_next = new int[numCols];
+			_releaseAt = new int[numCols];
+			_pressed = new boolean[numCols];
+		}
+
+		/**
+		 * Presses and releases the keys for the frame at a time
+		 */
+		void play(GameView game, int time) {
+			for (int c = 0; c < _next.length; c++) {
+				if (_pressed[c] && time >= _releaseAt[c]) {
+					game.keyReleased(_releases[c]);
+					_pressed[c] = false;
+				}
+				List<Period> column = _noteData.get(c);
+				// arrows which went past while the key was held for a hold are too late to press for
+				while (_next[c] < column.size() && column.get(_next[c]).start() < time - Column.DISCREPANCY) {
+					_next[c]++;
+				}
+				if (!_pressed[c] && _next[c] < column.size() && column.get(_next[c]).start() <= time + PRESS_EARLY) {
+					Period p = column.get(_next[c]);
+					if (_next[c] % SKIP != SKIP - 1) {
+						game.keyPressed(_presses[c]);
+						_pressed[c] = true;
+						_releaseAt[c] = Math.max(p.end(), p.start() + TAP_LENGTH);
+					}
+					_next[c]++;
+				}
+			}
+		}
+
+		/**
+		 * Lets go of every key and goes back to the start of the chart
+		 */
+		void restart(GameView game) {
+			for (int c = 0; c < _next.length; c++) {
+				if (_pressed[c]) {
+					game.keyReleased(_releases[c]);
+					_pressed[c] = false;
+				}
+				_next[c] = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return the heap in use, in MB, after a full collection, so that garbage which hasn't been collected yet isn't counted
+	 */
+	private static double liveHeapMb() {
+		System.gc();
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+			if (usage != null) {
+				used += usage.getUsed();
+			}
+		}
+		return used / (1024.0 * 1024.0);
+	}
+
+	/**
+	 * @return the slope of the least squares line through the points
+	 */
+	private static double slope(List<double[]> points) {
+		if (points.size() < 2) {
+			return 0;
+		}
+		double meanX = 0;
+		double meanY = 0;
+		for (double[] p : points) {
+			meanX += p[0] / points.size();
+			meanY += p[1] / points.size();
+		}
+		double covariance = 0;
+		double variance = 0;
+		for (double[] p : points) {
+			covariance += (p[0] - meanX) * (p[1] - meanY);
+			variance += (p[0] - meanX) * (p[0] - meanX);
+		}
+		return variance == 0 ? 0 : covariance / variance;
+	}
+
+	/**
+	 * Runs the soak test.
+	 * The arguments are: song name, [minutes to run for] [baseline file] ["update" to save the results as the new baseline]
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 1) {
+			System.out.println("Usage: SoakTest <song> [minutes] [baseline file] [update]");
+			return;
+		}
+		double minutes = args.length > 1 ? Double.parseDouble(args[1]) : 60;
+		File baselineFile = new File(args.length > 2 ? args[2] : DEFAULT_BASELINE);
+		boolean update = args.length > 3 && args[3].equals("update");
+
+		List<ArrayList<Period>> noteData = ChartPreprocessor.process(PIUFileReader.readNoteData(PIUFileReader.noteDataFile(args[0])));
+		int chartEnd = 0;
+		long periods = 0;
+		for (List<Period> column : noteData) {
+			periods += column.size();
+			if (!column.isEmpty()) {
+				chartEnd = Math.max(chartEnd, column.get(column.size() - 1).end());
+			}
+		}
+		System.out.println("Soaking " + args[0] + ": " + noteData.size() + " columns, " + periods + " periods, "
+				+ chartEnd / 1000 + "s long, for " + minutes + " minutes");
+
+		GameView game = new GameView(1, noteData);
+		game.setSize(1500, 1000);
+		game.componentResized(null);
+		BufferedImage image = new BufferedImage(1500, 1000, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		Bot bot = new Bot(game, noteData);
+		GcPauses pauses = new GcPauses();
+
+		FrameTimes interval = new FrameTimes();
+		FrameTimes total = new FrameTimes();
+		List<double[]> heap = new ArrayList<double[]>();
+		long gcPauses = 0;
+		long gcMaxPause = 0;
+		int laps = 0;
+
+		long start = System.nanoTime();
+		long end = start + (long) (minutes * 60e9);
+		long lastReport = start;
+		long nextReport = start + REPORT_INTERVAL * 1000000L;
+		System.out.println("minutes,frames,fps,p50Ms,p95Ms,p99Ms,maxMs,liveHeapMb,gcPauses,gcMaxPauseMs");
+		while (true) {
+			long now = System.nanoTime();
+			if (now >= nextReport || now >= end) {
+				double elapsedMinutes = (now - start) / 60e9;
+				double live = liveHeapMb();
+				long[] gc = pauses.takeCountAndMax();
+				System.out.println(String.format(Locale.ROOT, "%.1f,%d,%.0f,%.3f,%.3f,%.3f,%.3f,%.1f,%d,%d", elapsedMinutes, interval.frames(),
+						interval.frames() * 1e9 / Math.max(1, now - lastReport), interval.percentile(0.5), interval.percentile(0.95),
+						interval.percentile(0.99), interval.maxMs(), live, gc[0], gc[1]));
+				if (now - start > WARM_UP * 1000000L) {
+					total.addAll(interval);
+					heap.add(new double[] { elapsedMinutes / 60, live });
+					gcPauses += gc[0];
+					gcMaxPause = Math.max(gcMaxPause, gc[1]);
+				}
+				interval.clear();
+				lastReport = now;
+				if (now >= end) {
+					break;
+				}
+				nextReport += REPORT_INTERVAL * 1000000L;
+			}
+
+			// play the chart again from the start once it is over
+			if (game.timeElapsed() > chartEnd + Column.DISCREPANCY + 2 * GameView.DELAY) {
+				bot.restart(game);
+				game.seek(0);
+				laps++;
+			}
+			bot.play(game, game.timeElapsed());
+			long before = System.nanoTime();
+			game.paintComponent(g);
+			interval.add(System.nanoTime() - before);
+		}
+		g.dispose();
+
+		if (total.frames() == 0) {
+			System.out.println("The run was shorter than the warm up, so there are no results");
+			System.exit(0);
+		}
+		Properties results = new Properties();
+		double[] values = { total.percentile(0.5), total.percentile(0.95), total.percentile(0.99), gcMaxPause, slope(heap) };
+		for (int i = 0; i < METRICS.length; i++) {
+			results.setProperty(METRICS[i], String.format(Locale.ROOT, "%.3f", values[i]));
+		}
+		System.out.println(total.frames() + " frames measured over " + laps + " laps, " + gcPauses + " GC pauses. Results: " + results);
+
+		if (update) {
+			FileWriter output = new FileWriter(baselineFile);
+			try {
+				results.store(output, "SoakTest baseline for " + args[0]);
+			} finally {
+				output.close();
+			}
+			System.out.println("Saved the baseline to " + baselineFile);
+			System.exit(0);
+		}
+		if (!baselineFile.isFile()) {
+			System.out.println("There is no baseline at " + baselineFile + "; run again with \"update\" to save these results as the baseline");
+			System.exit(0);
+		}
+		Properties baseline = new Properties();
+		FileReader input = new FileReader(baselineFile);
+		try {
+			baseline.load(input);
+		} finally {
+			input.close();
+		}
+		int regressions = 0;
+		for (int i = 0; i < METRICS.length; i++) {
+			String stored = baseline.getProperty(METRICS[i]);
+			if (stored == null) {
+				continue;
+			}
+			double was = Double.parseDouble(stored);
+			if (values[i] > was * (1 + TOLERANCE) && values[i] - was > MIN_REGRESSION[i]) {
+				System.out.println(String.format("REGRESSION: %s is %.3f, the baseline is %.3f", METRICS[i], values[i], was));
+				regressions++;
+			}
+		}
+		if (regressions > 0) {
+			System.out.println("FAILED: " + regressions + " regressions against " + baselineFile);
+			System.exit(1);
+		}
+		System.out.println("passed");
+		System.exit(0);
+	}
+}
@@ -0,0 +1,322 @@
+package piu.gameplay;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import piu.utilities.WorkerPool;
+
+/**
+ * A TiledRenderer draws the players into its own image using several threads at once, and then
+ * draws that image onto the screen in one go. This is for machines without a GPU, where Java2D
+ * draws everything in software on a single core.
+ * The frame is split up into tiles, either horizontal bands or one tile per player. Each worker
+ * thread clears and draws only the pixels inside its own tile, so no two threads touch the same pixels.
+ * The inputs are still checked on the calling thread before any drawing starts, so the results are
+ * exactly the same as the normal painting path. The worker threads wait between frames by parking,
+ * and the tiles are kept from frame to frame, so drawing a frame doesn't make any new objects.
+ * @author AAA
+ */
+public class TiledRenderer {
+	/**
+	 * The ways that the frame can be split up between the worker threads
+	 */
+	public enum Mode {
+		// the frame is split into horizontal bands of equal height, one for each thread
+		BANDS,
+		// the frame is split into one tile for each player
+		PLAYERS
+	}
+
+	// how the frame is split up
+	private final Mode _mode;
+
+	// the number of bands to use in BANDS mode, which is also the number of worker threads
+	private final int _numBands;
+
+	// runs the worker threads, each of which stays in its loop until the renderer is shut down
+	private final ExecutorService _workers;
+	private final Worker[] _workerLoops;
+
+	// the image which all the tiles are drawn into, and the pixels backing it
+	private BufferedImage _image;
+	private int[] _pixels;
+
+	// the tiles, which are kept from frame to frame and only made again when the size of the frame or the players change
+	private Tile[] _tiles = new Tile[0];
+
+	// what the tiles draw this frame. These are written before _frame, so the workers always see this frame's values
+	private List<Player> _players;
+	private int _timeElapsed;
+	private int _backgroundRGB;
+	private Image _backgroundImage;
+	private int _numTiles;
+
+	// the next tile for a worker to draw, the number of workers still drawing this frame, and the thread waiting for them
+	private final AtomicInteger _nextTile = new AtomicInteger();
+	private final AtomicInteger _remaining = new AtomicInteger();
+	private volatile Thread _caller;
+
+	// counts the frames, so that a worker knows when there is a new one to draw
+	private volatile int _frame = 0;
+	private volatile boolean _stopped = false;
+
+	// the first thing thrown while drawing this frame, or null
+	private volatile Throwable _failure;
+
+	/**
+	 * Creates a new TiledRenderer with one band for each core
+	 * @param mode how the frame is split up
+	 */
+	public TiledRenderer(Mode mode) {
+		this(mode, WorkerPool.cores());
+	}
+
+	/**
+	 * Creates a new TiledRenderer
+	 * @param mode how the frame is split up
+	 * @param threads the number of worker threads, which is also the number of bands in BANDS mode
+	 */
+	public TiledRenderer(Mode mode, int threads) {
+		_mode = mode;
+		_numBands = Math.max(1, threads);
+		_workers = WorkerPool.newPool("tile-renderer", _numBands);
+		_workerLoops = new Worker[_numBands];
+		for (int i = 0; i < _numBands; i++) {
+			_workerLoops[i] = new Worker();
+			_workers.execute(_workerLoops[i]);
+		}
+	}
+
+	/**
+	 * Checks the inputs of every player and then draws them all onto g.
+	 * Once the size of the frame and the players stop changing, this doesn't make any new objects on any thread
+	 * @param g the graphics to draw the finished frame onto
+	 * @param players the players to draw
+	 * @param timeElapsed the time elapsed since the start of the song
+	 * @param width the width of the frame
+	 * @param height the height of the frame
+	 * @param background the colour to clear the frame to
+	 * @param backgroundImage the image to draw behind the players, or null for none
+	 */
+	void render(Graphics g, List<Player> players, int timeElapsed, int width, int height, Color background, Image backgroundImage) {
+		// the inputs have to be checked on one thread, since the columns aren't safe to update from several
+		for (int i = 0; i < players.size(); i++) {
+			players.get(i).update(timeElapsed);
+		}
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		if (_image == null || _image.getWidth() != width || _image.getHeight() != height) {
+			_image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			_pixels = ((DataBufferInt) _image.getRaster().getDataBuffer()).getData();
+			// the tiles draw into the old image
+			layOutTiles(0, null, width, height);
+		}
+		int numTiles = _mode == Mode.PLAYERS ? players.size() : _numBands;
+		layOutTiles(numTiles, players, width, height);
+
+		// every worker has finished the last frame, so nothing is read while it is being changed
+		_players = players;
+		_timeElapsed = timeElapsed;
+		_backgroundRGB = background.getRGB();
+		_backgroundImage = backgroundImage;
+		_numTiles = numTiles;
+		_failure = null;
+		_caller = Thread.currentThread();
+		_remaining.set(_numBands);
+		_nextTile.set(0);
+		_frame++;
+		for (Worker worker : _workerLoops) {
+			worker.wake();
+		}
+		boolean interrupted = false;
+		while (_remaining.get() > 0) {
+			LockSupport.park(this);
+			// the frame is always finished, since the workers are still drawing into the image
+			if (Thread.interrupted()) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		Throwable failure = _failure;
+		if (failure != null) {
+			throw new RuntimeException("Failed to draw a tile", failure);
+		}
+		g.drawImage(_image, 0, 0, null);
+	}
+
+	/**
+	 * Makes sure there are the right tiles for the frame, making new ones only where they have changed
+	 * @param numTiles the number of tiles, or 0 to throw all of them away
+	 * @param players the players being drawn
+	 * @param width the width of the frame
+	 * @param height the height of the frame
+	 */
+	private void layOutTiles(int numTiles, List<Player> players, int width, int height) {
+		if (_tiles.length != numTiles) {
+			for (Tile tile : _tiles) {
+				tile.dispose();
+			}
+			_tiles = new Tile[numTiles];
+		}
+		for (int i = 0; i < numTiles; i++) {
+			int x, y, tileWidth, tileHeight;
+			Player player = null;
+			if (_mode == Mode.PLAYERS) {
+				// the last player's tile takes up the rest of the frame
+				player = players.get(i);
+				x = player.x();
+				y = 0;
+				tileWidth = (i == players.size() - 1 ? width : players.get(i + 1).x()) - x;
+				tileHeight = height;
+			} else {
+				x = 0;
+				y = height * i / _numBands;
+				tileWidth = width;
+				tileHeight = height * (i + 1) / _numBands - y;
+			}
+			if (_tiles[i] == null || !_tiles[i].is(player, x, y, tileWidth, tileHeight)) {
+				if (_tiles[i] != null) {
+					_tiles[i].dispose();
+				}
+				_tiles[i] = new Tile(player, x, y, tileWidth, tileHeight);
+			}
+		}
+	}
+
+	/**
+	 * @return how the frame is split up
+	 */
+	public Mode mode() {
+		return _mode;
+	}
+
+	/**
+	 * Stops the worker threads. This renderer can't be used after this is called
+	 */
+	public void shutdown() {
+		_stopped = true;
+		for (Worker worker : _workerLoops) {
+			worker.wake();
+		}
+		_workers.shutdown();
+	}
+
+	/**
+	 * A Worker waits for a frame, then draws tiles until there are none left, and waits again.
+	 * The frame is only finished once every worker has found that there are no tiles left, so no worker is still
+	 * looking at one frame when the next one starts. Waiting and waking are done by parking the thread,
+	 * which doesn't make any new objects
+	 */
+	private class Worker implements Runnable {
+		// the thread running this worker, or null if it hasn't started yet
+		private volatile Thread _thread;
+
+		@Override
+		public void run() {
+			_thread = Thread.currentThread();
+			int seen = 0;
+			while (!_stopped) {
+				int frame = _frame;
+				if (frame == seen) {
+					LockSupport.park(this);
+					continue;
+				}
+				seen = frame;
+				int numTiles = _numTiles;
+				int index;
+				while ((index = _nextTile.getAndIncrement()) < numTiles) {
+					try {
+						_tiles[index].draw();
+					} catch (Throwable t) {
+						_failure = t;
+					}
+				}
+				if (_remaining.decrementAndGet() == 0) {
+					LockSupport.unpark(_caller);
+				}
+			}
+		}
+
+		/**
+		 * Wakes the worker up, if it has started; a worker which hasn't started yet checks for a frame as soon as it does
+		 */
+		void wake() {
+			Thread thread = _thread;
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	/**
+	 * A Tile clears and draws one rectangle of the shared image. It keeps its own Graphics, clipped to the rectangle,
+	 * and painter from frame to frame
+	 */
+	private class Tile {
+		// the only player drawn in this tile, or null if every player should be drawn
+		private final Player _player;
+		private final int _x;
+		private final int _y;
+		private final int _width;
+		private final int _height;
+		private final Graphics2D _g;
+		private final GraphicsPainter _painter;
+
+		Tile(Player player, int x, int y, int width, int height) {
+			_player = player;
+			_x = x;
+			_y = y;
+			_width = width;
+			_height = height;
+			_g = _image.createGraphics();
+			_g.clipRect(x, y, width, height);
+			_painter = new GraphicsPainter(_g);
+		}
+
+		/**
+		 * @return whether this tile draws the given player into the given rectangle
+		 */
+		boolean is(Player player, int x, int y, int width, int height) {
+			return _player == player && _x == x && _y == y && _width == width && _height == height;
+		}
+
+		void draw() {
+			if (_width <= 0 || _height <= 0) {
+				return;
+			}
+			// clear this tile's rows of the pixel array directly, which is much faster than fillRect
+			int imageWidth = _image.getWidth();
+			for (int row = _y; row < _y + _height; row++) {
+				Arrays.fill(_pixels, row * imageWidth + _x, row * imageWidth + _x + _width, _backgroundRGB);
+			}
+			if (_backgroundImage != null) {
+				_g.drawImage(_backgroundImage, 0, 0, null);
+			}
+			// the painter's colour and font are put back each frame, as they are on a new Graphics
+			_painter.setGraphics(_g);
+			if (_player != null) {
+				_player.draw(_painter, _timeElapsed);
+			} else {
+				for (int i = 0; i < _players.size(); i++) {
+					_players.get(i).draw(_painter, _timeElapsed);
+				}
+			}
+		}
+
+		void dispose() {
+			_g.dispose();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package piu.gameplay;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A WarmUp plays a synthetic chart into an offscreen image while a song is loading, so that the JIT compiler has compiled
+ * the judgement and drawing code by the time the song starts. Without it, the first seconds of a song run interpreted
+ * and stutter. The warm-up uses a GameView of its own, with the same number of players and columns and the same kind of
+ * renderer as the real game, and presses keys on a pattern which gives both hits and misses, so the same code runs.
+ * It stops after a number of frames or once its time is up, or earlier once the compiler has had nothing to compile
+ * for QUIET_FRAMES frames
+ * @author AAA
+ */
+public class WarmUp {
+	// the number of frames played if the compiler doesn't go quiet first
+	public static final int DEFAULT_ITERATIONS = 5000;
+
+	// the longest the warm-up takes if it hasn't stopped already, in ms
+	public static final int DEFAULT_TIME_LIMIT = 5000;
+
+	// the warm-up stops once this many frames in a row haven't compiled anything
+	private static final int QUIET_FRAMES = 500;
+
+	// the fewest frames played, since the compiler can be quiet for a while before compiling the methods called once a frame
+	private static final int MIN_ITERATIONS = 1000;
+
+	// the number of frames at the start and at the end of the warm-up which are timed, to show the difference it made
+	private static final int TIMED_FRAMES = 100;
+
+	// the size of the offscreen image. The code run doesn't depend on the size, so it is small to keep the frames short
+	private static final int WIDTH = 600;
+	private static final int HEIGHT = 400;
+
+	private final int _numPlayers;
+	private final int _numCols;
+	private final TiledRenderer.Mode _mode;
+	private int _maxIterations = DEFAULT_ITERATIONS;
+	private int _timeLimit = DEFAULT_TIME_LIMIT;
+
+	// the results of run()
+	private int _iterations = 0;
+	private long _time = 0;
+	private long _coldFrameTime = 0;
+	private long _warmFrameTime = 0;
+
+	/**
+	 * Creates a new WarmUp
+	 * @param numPlayers the number of players of the real game
+	 * @param numCols the number of columns each player has
+	 * @param mode the mode of the real game's TiledRenderer, or null if it draws on the event dispatch thread
+	 */
+	public WarmUp(int numPlayers, int numCols, TiledRenderer.Mode mode) {
+		_numPlayers = numPlayers;
+		_numCols = numCols;
+		_mode = mode;
+	}
+
+	/**
+	 * @param iterations the most frames to play
+	 */
+	public void setIterations(int iterations) {
+		_maxIterations = Math.max(TIMED_FRAMES * 2, iterations);
+	}
+
+	/**
+	 * @param timeLimit the longest the warm-up takes, in ms
+	 */
+	public void setTimeLimit(int timeLimit) {
+		_timeLimit = timeLimit;
+	}
+
+	/**
+	 * Makes a chart with an arrow every 250ms in each column, and a one second hold instead of every eighth arrow
+	 * @param numCols the number of columns
+	 * @param length the length of the chart, in ms
+	 * @return the note data of the chart
+	 */
+	static List<ArrayList<Period>> syntheticChart(int numCols, int length) {
+		List<ArrayList<Period>> noteData = new ArrayList<ArrayList<Period>>();
+		for (int column = 0; column < numCols; column++) {
+			ArrayList<Period> notes = new ArrayList<Period>();
+			int note = 0;
+			for (int start = 1000 + column * 50 % 250; start < length; start += 250) {
+				if (note++ % 8 == 7) {
+					notes.add(new Period(start, start + 1000));
+					start += 1000;
+				} else {
+					notes.add(new Period(start, start + 1));
+				}
+			}
+			noteData.add(notes);
+		}
+		return ChartPreprocessor.process(noteData);
+	}
+
+	/**
+	 * Plays the synthetic chart until the compiler is quiet or the most frames have been played
+	 */
+	public void run() {
+		long startTime = System.nanoTime();
+		long deadline = startTime + _timeLimit * 1000000L;
+		GameView game = new GameView(_numPlayers, syntheticChart(_numCols, _maxIterations * GameView.DELAY + 10000));
+		if (_mode != null) {
+			game.setRenderer(new TiledRenderer(_mode));
+		}
+		game.setSize(WIDTH, HEIGHT);
+		game.componentResized(null);
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+
+		int numKeys = _numPlayers * _numCols;
+		KeyEvent[] presses = new KeyEvent[numKeys];
+		KeyEvent[] releases = new KeyEvent[numKeys];
+		for (int i = 0; i < numKeys; i++) {
+			char key = GameView.INPUT_CHARACTERS.charAt(i);
+			presses[i] = new KeyEvent(game, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_UNDEFINED, key);
+			releases[i] = new KeyEvent(game, KeyEvent.KEY_RELEASED, 0, 0, KeyEvent.VK_UNDEFINED, key);
+		}
+
+		CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+		boolean canWatchCompiler = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+		long compileTime = canWatchCompiler ? compiler.getTotalCompilationTime() : 0;
+		int quietFrames = 0;
+		long coldTotal = 0;
+		// the times of the last TIMED_FRAMES frames, since it isn't known in advance which frame will be the last
+		long[] recent = new long[TIMED_FRAMES];
+
+		int frame = 0;
+		while (frame < _maxIterations && (frame < MIN_ITERATIONS || quietFrames < QUIET_FRAMES)
+				&& (frame < TIMED_FRAMES * 2 || System.nanoTime() < deadline)) {
+			// each column is held down for 5 frames out of every 13, so there are both hits and misses
+			for (int i = 0; i < numKeys; i++) {
+				int step = (frame + i * 3) % 13;
+				if (step == 0) {
+					game.keyPressed(presses[i]);
+				} else if (step == 5) {
+					game.keyReleased(releases[i]);
+				}
+			}
+			long frameStart = System.nanoTime();
+			game.paintComponent(g);
+			long frameTime = System.nanoTime() - frameStart;
+			if (frame < TIMED_FRAMES) {
+				coldTotal += frameTime;
+			}
+			recent[frame % TIMED_FRAMES] = frameTime;
+			frame++;
+
+			if (canWatchCompiler) {
+				long now = compiler.getTotalCompilationTime();
+				quietFrames = now == compileTime ? quietFrames + 1 : 0;
+				compileTime = now;
+			}
+		}
+		g.dispose();
+		game.shutdown();
+
+		long warmTotal = 0;
+		for (long time : recent) {
+			warmTotal += time;
+		}
+		_iterations = frame;
+		_time = (System.nanoTime() - startTime) / 1000000;
+		_coldFrameTime = coldTotal / TIMED_FRAMES;
+		_warmFrameTime = warmTotal / TIMED_FRAMES;
+	}
+
+	/**
+	 * @return the number of frames played
+	 */
+	public int iterations() {
+		return _iterations;
+	}
+
+	/**
+	 * @return how long the warm-up took, in ms
+	 */
+	public long time() {
+		return _time;
+	}
+
+	/**
+	 * @return the average time to paint one of the first frames of the warm-up, in ns.
+	 * The warm-up's frames are smaller than the game's, so this is only comparable with warmFrameTime()
+	 */
+	public long coldFrameTime() {
+		return _coldFrameTime;
+	}
+
+	/**
+	 * @return the average time to paint one of the last frames of the warm-up, in ns
+	 */
+	public long warmFrameTime() {
+		return _warmFrameTime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Warm-up played %d frames in %dms; frames went from %.2fms to %.2fms", _iterations, _time,
+				_coldFrameTime / 1e6, _warmFrameTime / 1e6);
+	}
+}
@@ -0,0 +1,263 @@
+package piu.utilities;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The ChartAnalyzer works out the difficulty metrics of every chart in the songs directory and writes them to a ChartReport.
+ * Each chart is streamed through PIUFileReader.readNoteData, so the periods are never kept in memory;
+ * only counts for each slice of time are kept, so the memory used depends on how long a chart is, not how many notes it has.
+ * The notes starting in each ms are counted too, to find the arrows which start together.
+ * The charts are analysed in parallel, and each row is written as soon as its chart is finished
+ * All methods are static; this will never be instantiated
+ * @author AAA
+ */
+public class ChartAnalyzer {
+	// the length of the slices used to count notes per second, in ms
+	private static final int DENSITY_SLICE = 100;
+
+	// arrows start together if each starts at most this long after the one before it, in ms
+	private static final int JUMP_TOLERANCE = 10;
+
+	// the length of the window used for the sustained density, in ms
+	private static final int SUSTAINED_WINDOW = 30000;
+
+	// the number of notes per second which doesn't count towards the stamina score
+	private static final int RESTING_NPS = 3;
+
+	// the end of the name of every NoteData file
+	private static final String NOTE_DATA_SUFFIX = "NoteData.txt";
+
+	/**
+	 * The constructor is private and does nothing. It will never be called,
+	 * to ensure that this class is never instantiated
+	 */
+	private ChartAnalyzer() {}
+
+	/**
+	 * Works out the metrics of one chart
+	 * @param song the name of the song
+	 * @param file the NoteData file of the chart
+	 * @return the metrics of the chart
+	 * @throws IOException if the chart can't be read
+	 */
+	public static ChartReport.Row analyze(String song, File file) throws IOException {
+		Counter counter = new Counter();
+		PIUFileReader.readNoteData(file, counter);
+		return counter.toRow(song);
+	}
+
+	/**
+	 * Works out the metrics of every chart in a songs directory, and writes them to a report
+	 * @param songsDirectory the directory holding a directory for every song
+	 * @param report the file to write the report to
+	 * @return the number of charts analysed
+	 * @throws IOException if the report can't be written
+	 * @throws InterruptedException if the analysis was interrupted
+	 */
+	public static int analyzeLibrary(File songsDirectory, File report) throws IOException, InterruptedException {
+		File[] songs = songsDirectory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isDirectory();
+			}
+		});
+		if (songs == null) {
+			throw new IOException(songsDirectory + " isn't a directory");
+		}
+		Arrays.sort(songs);
+
+		ExecutorService workers = WorkerPool.newPool("chart-analyzer");
+		CompletionService<ChartReport.Row> results = new ExecutorCompletionService<ChartReport.Row>(workers);
+		int charts = 0;
+		for (File song : songs) {
+			File[] files = song.listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (final File file : files) {
+				if (file.getName().endsWith(NOTE_DATA_SUFFIX)) {
+					final String name = file.getName().substring(0, file.getName().length() - NOTE_DATA_SUFFIX.length());
+					results.submit(new Callable<ChartReport.Row>() {
+						@Override
+						public ChartReport.Row call() throws IOException {
+							return analyze(name, file);
+						}
+					});
+					charts++;
+				}
+			}
+		}
+
+		PrintWriter output = new PrintWriter(new FileWriter(report));
+		try {
+			output.println(ChartReport.header());
+			for (int i = 0; i < charts; i++) {
+				try {
+					output.println(results.take().get());
+				} catch (ExecutionException e) {
+					// one bad chart shouldn't stop the rest of the library from being analysed
+					System.out.println("Couldn't analyse a chart: " + e.getCause().getMessage());
+				}
+			}
+		} finally {
+			output.close();
+			workers.shutdownNow();
+		}
+		return charts;
+	}
+
+	/**
+	 * A Counter counts the notes of a chart as it is read, in slices of time
+	 */
+	private static class Counter implements PIUFileReader.NoteDataListener {
+		// the number of notes starting in each DENSITY_SLICE
+		private int[] _density = new int[0];
+		// the number of notes starting in each ms, and a bit for each of the first 32 columns which has a note starting
+		private int[] _starts = new int[0];
+		private int[] _columns = new int[0];
+
+		private int _notes = 0;
+		private int _holds = 0;
+		private long _holdTime = 0;
+		private int _firstStart = Integer.MAX_VALUE;
+		private int _lastEnd = 0;
+
+		@Override
+		public void period(int column, int start, int end) {
+			if (start < 0) {
+				return;
+			}
+			_notes++;
+			if (end != start + 1) {
+				_holds++;
+				_holdTime += end - start;
+			}
+			_firstStart = Math.min(_firstStart, start);
+			_lastEnd = Math.max(_lastEnd, end);
+
+			_density = fit(_density, start / DENSITY_SLICE);
+			_density[start / DENSITY_SLICE]++;
+			_starts = fit(_starts, start);
+			_starts[start]++;
+			if (column < Integer.SIZE) {
+				_columns = fit(_columns, start);
+				_columns[start] |= 1 << column;
+			}
+		}
+
+		@Override
+		public void columnEnd(int column) {}
+
+		/**
+		 * @return the array, grown if needed so that index is inside it
+		 */
+		private static int[] fit(int[] array, int index) {
+			if (index < array.length) {
+				return array;
+			}
+			return Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+		}
+
+		/**
+		 * @param window the length of the window, in slices
+		 * @return the most notes starting in any window of that many DENSITY_SLICEs
+		 */
+		private int maxInWindow(int window) {
+			int best = 0;
+			int inWindow = 0;
+			for (int i = 0; i < _density.length; i++) {
+				inWindow += _density[i];
+				if (i >= window) {
+					inWindow -= _density[i - window];
+				}
+				best = Math.max(best, inWindow);
+			}
+			return best;
+		}
+
+		/**
+		 * @param song the name of the song
+		 * @return the metrics of the chart which has been read
+		 */
+		ChartReport.Row toRow(String song) {
+			int duration = _notes == 0 ? 0 : _lastEnd - _firstStart;
+			int slicesPerSecond = 1000 / DENSITY_SLICE;
+			// charts shorter than the sustained window are averaged over their whole length
+			int sustainedWindow = Math.max(1000, Math.min(SUSTAINED_WINDOW, duration));
+
+			// the notes are walked in order of their starts, and a note starting at most JUMP_TOLERANCE after the last one
+			// is in the same group, so notes a few ms apart are counted together wherever they fall
+			int jumps = 0;
+			int brackets = 0;
+			int groupNotes = 0;
+			int groupColumns = 0;
+			int lastStart = 0;
+			for (int i = 0; i <= _starts.length; i++) {
+				boolean finished = i == _starts.length;
+				if (!finished && _starts[i] == 0) {
+					continue;
+				}
+				if (groupNotes > 0 && (finished || i - lastStart > JUMP_TOLERANCE)) {
+					if (groupNotes >= 2) {
+						jumps++;
+						// a bracket is exactly two columns which are next to each other
+						if (groupNotes == 2 && Integer.bitCount(groupColumns) == 2 && (groupColumns & (groupColumns >>> 1)) != 0) {
+							brackets++;
+						}
+					}
+					groupNotes = 0;
+					groupColumns = 0;
+				}
+				if (!finished) {
+					groupNotes += _starts[i];
+					groupColumns |= i < _columns.length ? _columns[i] : 0;
+					lastStart = i;
+				}
+			}
+
+			int stamina = 0;
+			for (int second = 0; second < _density.length; second += slicesPerSecond) {
+				int notes = 0;
+				for (int i = second; i < Math.min(_density.length, second + slicesPerSecond); i++) {
+					notes += _density[i];
+				}
+				stamina += Math.max(0, notes - RESTING_NPS);
+			}
+
+			return new ChartReport.Row(song, new double[] {
+					_notes,
+					_holds,
+					_holdTime,
+					duration,
+					duration == 0 ? 0 : _notes * 1000.0 / duration,
+					maxInWindow(slicesPerSecond),
+					maxInWindow(sustainedWindow / DENSITY_SLICE) * 1000.0 / sustainedWindow,
+					jumps,
+					brackets,
+					stamina
+			});
+		}
+	}
+
+	/**
+	 * Analyses the whole library.
+	 * The arguments are: [songs directory] [report file]
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File songs = args.length > 0 ? new File(args[0]) : PIUFileReader.songsDirectory();
+		File report = new File(args.length > 1 ? args[1] : "chartReport.csv");
+		long startTime = System.nanoTime();
+		int charts = analyzeLibrary(songs, report);
+		System.out.println("Analysed " + charts + " charts into " + report + " in " + (System.nanoTime() - startTime) / 1000000 + "ms");
+	}
+}
@@ -0,0 +1,442 @@
+package piu.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import piu.gameplay.Period;
+
+/**
+ * The ChartGenerator makes a first draft of a chart from a song's audio, by finding the onsets (the starts of notes and beats) in it.
+ * The audio is read as a stream, mixed down to mono, and cut into chunks of CHUNK_FRAMES frames which are analysed in parallel.
+ * Each frame is a Hann windowed FFT of WINDOW samples, HOP samples after the one before it, and its spectral flux is how much
+ * louder each frequency got since the frame before. Neighbouring chunks overlap by one frame and a window of samples,
+ * so every frame is worked out from exactly the same samples as if the whole song were done at once.
+ * An onset is a peak in the spectral flux which stands above the average flux around it; onsets are kept at least
+ * 1000 / density ms apart. Each onset becomes an arrow, in a column chosen from how bright it sounds (its spectral centroid),
+ * and becomes a hold if the sound carries on for long enough before the next onset
+ * @author AAA
+ */
+public class ChartGenerator {
+	// the number of samples in each FFT window, and between the starts of neighbouring windows
+	private static final int WINDOW = 2048;
+	private static final int HOP = 512;
+
+	// the number of frames analysed by each task
+	private static final int CHUNK_FRAMES = 1024;
+
+	// how strongly the magnitudes are compressed before the flux is taken, so that quiet instruments count as well as loud ones
+	private static final double COMPRESSION = 100;
+
+	// an onset has to be the biggest flux within PEAK_WINDOW ms, and bigger than the mean flux within MEAN_WINDOW ms
+	// times the sensitivity, plus THRESHOLD times the mean flux of the whole song
+	private static final int PEAK_WINDOW = 50;
+	private static final int MEAN_WINDOW = 150;
+	private static final double THRESHOLD = 0.5;
+
+	// a hold lasts while the power of the sound is at least this much of its power at the onset
+	private static final double HOLD_LEVEL = 0.25;
+
+	private final int _numCols;
+	private double _density = 4;
+	private double _sensitivity = 1.5;
+	private int _minHoldLength = 400;
+
+	/**
+	 * Creates a new ChartGenerator, which places at most 4 arrows per second and makes holds of at least 400ms
+	 * @param numCols the number of columns in the charts it makes
+	 */
+	public ChartGenerator(int numCols) {
+		if (numCols < 1) {
+			throw new IllegalArgumentException("A chart needs at least one column");
+		}
+		_numCols = numCols;
+	}
+
+	/**
+	 * Sets how many arrows a chart can have
+	 * @param notesPerSecond the most arrows which can start in a second
+	 */
+	public void setDensity(double notesPerSecond) {
+		if (notesPerSecond <= 0) {
+			throw new IllegalArgumentException("The density has to be positive");
+		}
+		_density = notesPerSecond;
+	}
+
+	/**
+	 * Sets how far above the flux around it a peak has to be to become an arrow
+	 * @param sensitivity the multiple of the local mean flux a peak has to reach. Lower values give more arrows
+	 */
+	public void setSensitivity(double sensitivity) {
+		_sensitivity = sensitivity;
+	}
+
+	/**
+	 * Sets how long a sound has to carry on for to become a hold
+	 * @param minHoldLength the shortest hold, in ms, or 0 to make only taps
+	 */
+	public void setMinHoldLength(int minHoldLength) {
+		_minHoldLength = minHoldLength;
+	}
+
+	/**
+	 * The onset detection function of some audio, with a value for each frame
+	 */
+	private static class Features {
+		// the spectral flux, the total power, and the spectral centroid as a fraction of the highest frequency
+		final float[] flux;
+		final float[] energy;
+		final float[] centroid;
+
+		Features(int frames) {
+			flux = new float[frames];
+			energy = new float[frames];
+			centroid = new float[frames];
+		}
+	}
+
+	/**
+	 * Makes a chart from an audio file
+	 * @param audio the audio file, which can be any format AudioSystem can decode to PCM, such as WAV
+	 * @return the note data, one list for each column, with each list in time order
+	 * @throws IOException if the audio can't be read
+	 * @throws InterruptedException if the analysis was interrupted
+	 */
+	public List<ArrayList<Period>> generate(File audio) throws IOException, InterruptedException {
+		AudioInputStream input;
+		try {
+			input = AudioSystem.getAudioInputStream(audio);
+		} catch (UnsupportedAudioFileException e) {
+			throw new IOException(audio + " isn't audio which can be read", e);
+		}
+		try {
+			float sampleRate = input.getFormat().getSampleRate();
+			Features features = analyze(input);
+			int[] onsets = findOnsets(features, sampleRate);
+			return makeChart(features, onsets, sampleRate);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads the audio as a stream and works out the features of every frame, a chunk at a time on worker threads.
+	 * Only the chunks waiting to be analysed are kept in memory
+	 */
+	private Features analyze(AudioInputStream input) throws IOException, InterruptedException {
+		AudioFormat format = input.getFormat();
+		int channels = format.getChannels();
+		AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16, channels, channels * 2,
+				format.getSampleRate(), false);
+		if (!format.matches(pcm)) {
+			input = AudioSystem.getAudioInputStream(pcm, input);
+		}
+
+		final FFT fft = new FFT(WINDOW);
+		int chunkSamples = CHUNK_FRAMES * HOP + WINDOW;
+		// the samples which haven't been given to a task yet. The stream starts with enough silence that frame 0
+		// is centred on the first sample, and the frame before it is all silence
+		float[] buffer = new float[chunkSamples * 2];
+		int length = HOP + WINDOW / 2;
+		long samples = 0;
+		int submittedFrames = 0;
+
+		ExecutorService workers = WorkerPool.newPool("chart-generator");
+		List<Future<Features>> chunks = new ArrayList<Future<Features>>();
+		ArrayDeque<Future<Features>> running = new ArrayDeque<Future<Features>>();
+		try {
+			byte[] bytes = new byte[channels * 2 * 16384];
+			int leftover = 0;
+			int read;
+			while ((read = input.read(bytes, leftover, bytes.length - leftover)) != -1) {
+				read += leftover;
+				int frameBytes = channels * 2;
+				int frames = read / frameBytes;
+				if (length + frames > buffer.length) {
+					buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + frames));
+				}
+				// mix each frame of the PCM down to one sample
+				for (int i = 0; i < frames; i++) {
+					int sum = 0;
+					for (int c = 0; c < channels; c++) {
+						int at = i * frameBytes + c * 2;
+						sum += (short) ((bytes[at] & 0xFF) | (bytes[at + 1] << 8));
+					}
+					buffer[length++] = sum / (32768f * channels);
+				}
+				samples += frames;
+				leftover = read - frames * frameBytes;
+				System.arraycopy(bytes, frames * frameBytes, bytes, 0, leftover);
+
+				while (length >= chunkSamples) {
+					submit(workers, fft, Arrays.copyOf(buffer, chunkSamples), CHUNK_FRAMES, chunks, running);
+					submittedFrames += CHUNK_FRAMES;
+					// the next chunk starts with the last frame of this one, so that it has the frame before its first
+					length -= CHUNK_FRAMES * HOP;
+					System.arraycopy(buffer, CHUNK_FRAMES * HOP, buffer, 0, length);
+				}
+			}
+
+			// the last chunk is padded with silence, and has a frame for every HOP samples of the song
+			int frames = (int) ((samples + HOP - 1) / HOP) - submittedFrames;
+			if (frames > 0) {
+				float[] last = Arrays.copyOf(buffer, frames * HOP + WINDOW);
+				Arrays.fill(last, Math.min(length, last.length), last.length, 0);
+				submit(workers, fft, last, frames, chunks, running);
+			}
+
+			int total = 0;
+			List<Features> results = new ArrayList<Features>();
+			for (Future<Features> chunk : chunks) {
+				Features result = chunk.get();
+				results.add(result);
+				total += result.flux.length;
+			}
+			Features features = new Features(total);
+			int at = 0;
+			for (Features result : results) {
+				System.arraycopy(result.flux, 0, features.flux, at, result.flux.length);
+				System.arraycopy(result.energy, 0, features.energy, at, result.energy.length);
+				System.arraycopy(result.centroid, 0, features.centroid, at, result.centroid.length);
+				at += result.flux.length;
+			}
+			return features;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A chunk of the audio couldn't be analysed", e.getCause());
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gives a chunk to the workers. If there are already two chunks for every worker waiting,
+	 * this waits for the oldest one to finish first, so that reading can't get far ahead of the analysis
+	 */
+	private static void submit(ExecutorService workers, final FFT fft, final float[] samples, final int frames,
+			List<Future<Features>> chunks, ArrayDeque<Future<Features>> running) throws InterruptedException, ExecutionException {
+		while (running.size() >= 2 * WorkerPool.cores()) {
+			running.removeFirst().get();
+		}
+		Future<Features> chunk = workers.submit(new Callable<Features>() {
+			@Override
+			public Features call() {
+				return analyzeChunk(fft, samples, frames);
+			}
+		});
+		chunks.add(chunk);
+		running.addLast(chunk);
+	}
+
+	/**
+	 * Works out the features of the frames of one chunk
+	 * @param samples the samples of the chunk, starting with the frame before its first frame
+	 * @param frames the number of frames in the chunk
+	 */
+	private static Features analyzeChunk(FFT fft, float[] samples, int frames) {
+		Features features = new Features(frames);
+		float[] re = new float[WINDOW];
+		float[] im = new float[WINDOW];
+		float[] magnitudes = new float[WINDOW / 2 + 1];
+		float[] previous = new float[WINDOW / 2 + 1];
+		float[] current = new float[WINDOW / 2 + 1];
+
+		fft.magnitudes(samples, 0, re, im, magnitudes);
+		compress(magnitudes, previous);
+		for (int frame = 0; frame < frames; frame++) {
+			fft.magnitudes(samples, (frame + 1) * HOP, re, im, magnitudes);
+			compress(magnitudes, current);
+			float flux = 0;
+			float energy = 0;
+			float weighted = 0;
+			for (int bin = 0; bin < current.length; bin++) {
+				flux += Math.max(0, current[bin] - previous[bin]);
+				float power = magnitudes[bin] * magnitudes[bin];
+				energy += power;
+				weighted += bin * power;
+			}
+			features.flux[frame] = flux;
+			features.energy[frame] = energy;
+			features.centroid[frame] = energy == 0 ? 0 : weighted / energy / (current.length - 1);
+
+			float[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return features;
+	}
+
+	/**
+	 * Compresses the magnitudes logarithmically
+	 */
+	private static void compress(float[] magnitudes, float[] output) {
+		for (int i = 0; i < magnitudes.length; i++) {
+			output[i] = (float) Math.log1p(COMPRESSION * magnitudes[i]);
+		}
+	}
+
+	/**
+	 * @return the number of frames in a length of time, which is always at least 1
+	 */
+	private static int frames(double ms, float sampleRate) {
+		return Math.max(1, (int) Math.round(ms * sampleRate / 1000 / HOP));
+	}
+
+	/**
+	 * @return the time at the centre of a frame, in ms
+	 */
+	private static int time(int frame, float sampleRate) {
+		return (int) Math.round((double) frame * HOP * 1000 / sampleRate);
+	}
+
+	/**
+	 * Picks the peaks of the spectral flux which are onsets
+	 * @return the frames of the onsets, in order
+	 */
+	private int[] findOnsets(Features features, float sampleRate) {
+		float[] flux = features.flux;
+		int peakWindow = frames(PEAK_WINDOW, sampleRate);
+		int meanWindow = frames(MEAN_WINDOW, sampleRate);
+		int minGap = frames(1000 / _density, sampleRate);
+
+		// prefix sums, so that the mean around each frame takes constant time
+		double[] sums = new double[flux.length + 1];
+		for (int i = 0; i < flux.length; i++) {
+			sums[i + 1] = sums[i] + flux[i];
+		}
+		double songMean = flux.length == 0 ? 0 : sums[flux.length] / flux.length;
+
+		int[] onsets = new int[64];
+		int count = 0;
+		for (int frame = 0; frame < flux.length; frame++) {
+			if (flux[frame] <= 0 || !isPeak(flux, frame, peakWindow)) {
+				continue;
+			}
+			int from = Math.max(0, frame - meanWindow);
+			int to = Math.min(flux.length, frame + meanWindow + 1);
+			double localMean = (sums[to] - sums[from]) / (to - from);
+			if (flux[frame] < _sensitivity * localMean + THRESHOLD * songMean) {
+				continue;
+			}
+			if (count > 0 && frame - onsets[count - 1] < minGap) {
+				// too close to the last onset; keep whichever is stronger
+				if (flux[frame] > flux[onsets[count - 1]]) {
+					onsets[count - 1] = frame;
+				}
+				continue;
+			}
+			if (count == onsets.length) {
+				onsets = Arrays.copyOf(onsets, count * 2);
+			}
+			onsets[count++] = frame;
+		}
+		return Arrays.copyOf(onsets, count);
+	}
+
+	/**
+	 * @return whether the flux of a frame is the biggest within window frames of it.
+	 * On a flat top, only the first frame counts
+	 */
+	private static boolean isPeak(float[] flux, int frame, int window) {
+		for (int i = Math.max(0, frame - window); i < Math.min(flux.length, frame + window + 1); i++) {
+			if (flux[i] > flux[frame] || (i < frame && flux[i] == flux[frame])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Turns the onsets into arrows. The brightest sounds go furthest right, and an arrow is moved along one column
+	 * rather than coming straight after an arrow in the same column
+	 */
+	private List<ArrayList<Period>> makeChart(final Features features, int[] onsets, float sampleRate) {
+		List<ArrayList<Period>> noteData = new ArrayList<ArrayList<Period>>();
+		for (int i = 0; i < _numCols; i++) {
+			noteData.add(new ArrayList<Period>());
+		}
+
+		// rank the onsets by brightness, so that every column gets its share of the arrows
+		Integer[] byCentroid = new Integer[onsets.length];
+		for (int i = 0; i < onsets.length; i++) {
+			byCentroid[i] = i;
+		}
+		final int[] frames = onsets;
+		Arrays.sort(byCentroid, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Float.compare(features.centroid[frames[a]], features.centroid[frames[b]]);
+			}
+		});
+		int[] columns = new int[onsets.length];
+		for (int rank = 0; rank < onsets.length; rank++) {
+			columns[byCentroid[rank]] = (int) ((long) rank * _numCols / onsets.length);
+		}
+
+		int previousColumn = -1;
+		for (int i = 0; i < onsets.length; i++) {
+			int column = columns[i];
+			if (column == previousColumn && _numCols > 1) {
+				column = (column + 1) % _numCols;
+			}
+			previousColumn = column;
+
+			int frame = onsets[i];
+			int start = time(frame, sampleRate);
+			int end = start + 1;
+			if (_minHoldLength > 0) {
+				// the hold ends when the sound fades, or the frame before the next onset
+				int limit = i + 1 < onsets.length ? onsets[i + 1] - 1 : features.energy.length;
+				int last = frame + 1;
+				while (last < limit && features.energy[last] >= HOLD_LEVEL * features.energy[frame]) {
+					last++;
+				}
+				if (time(last, sampleRate) - start >= _minHoldLength) {
+					end = time(last, sampleRate);
+				}
+			}
+			noteData.get(column).add(new Period(start, end));
+		}
+		return noteData;
+	}
+
+	/**
+	 * Makes a chart from an audio file and writes it as a song's NoteData file.
+	 * The arguments are: audio file, song name, [number of columns] [most arrows per second] [shortest hold in ms, or 0 for no holds]
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: ChartGenerator <audio file> <song> [columns] [arrows per second] [shortest hold ms]");
+			return;
+		}
+		ChartGenerator generator = new ChartGenerator(args.length > 2 ? Integer.parseInt(args[2]) : 5);
+		if (args.length > 3) {
+			generator.setDensity(Double.parseDouble(args[3]));
+		}
+		if (args.length > 4) {
+			generator.setMinHoldLength(Integer.parseInt(args[4]));
+		}
+		long startTime = System.nanoTime();
+		List<ArrayList<Period>> noteData = generator.generate(new File(args[0]));
+		File output = PIUFileReader.noteDataFile(args[1]);
+		PIUFileWriter.writeNoteData(output, noteData);
+		int notes = 0;
+		for (List<Period> column : noteData) {
+			notes += column.size();
+		}
+		System.out.println("Wrote " + notes + " arrows to " + output + " in " + (System.nanoTime() - startTime) / 1000000 + "ms");
+	}
+}
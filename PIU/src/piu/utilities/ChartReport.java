@@ -0,0 +1,232 @@
+package piu.utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A ChartReport holds the difficulty metrics of many charts, as written by the ChartAnalyzer.
+ * The report is a CSV file with one row per chart, so it can also be opened in a spreadsheet.
+ * The rows can be sorted and filtered by any of the metrics
+ * @author AAA
+ */
+public class ChartReport {
+	/**
+	 * The names of the metrics, in the order of the columns of the report:
+	 * notes: the number of periods,
+	 * holds: the number of periods which are holds,
+	 * holdTime: the total time spent holding, in ms,
+	 * duration: the time from the first arrow to the end of the last, in ms,
+	 * averageNps: the average number of notes per second,
+	 * peakNps: the most notes in any one second,
+	 * sustainedNps: the highest average notes per second over any 30 seconds,
+	 * jumps: the number of times that two or more arrows start together, each within 10ms of the one before it,
+	 * brackets: the number of jumps of exactly two neighbouring columns,
+	 * stamina: the number of notes above a resting pace of 3 per second, added up over every second of the chart
+	 */
+	public static final List<String> METRICS = Collections.unmodifiableList(Arrays.asList(
+			"notes", "holds", "holdTime", "duration", "averageNps", "peakNps", "sustainedNps", "jumps", "brackets", "stamina"));
+
+	private final List<Row> _rows;
+
+	/**
+	 * Creates a report from a list of rows
+	 * @param rows the rows of the report
+	 */
+	public ChartReport(List<Row> rows) {
+		_rows = Collections.unmodifiableList(new ArrayList<Row>(rows));
+	}
+
+	/**
+	 * Reads a report which was written by the ChartAnalyzer
+	 * @param file the report file
+	 * @return the report
+	 * @throws IOException if the file can't be read, or isn't a report
+	 */
+	public static ChartReport load(File file) throws IOException {
+		List<Row> rows = new ArrayList<Row>();
+		BufferedReader input = new BufferedReader(new FileReader(file));
+		try {
+			String line = input.readLine();
+			if (line == null || !line.equals(header())) {
+				throw new IOException(file + " isn't a chart report");
+			}
+			while ((line = input.readLine()) != null) {
+				if (!line.isEmpty()) {
+					rows.add(parse(line));
+				}
+			}
+		} finally {
+			input.close();
+		}
+		return new ChartReport(rows);
+	}
+
+	/**
+	 * @return every row of the report
+	 */
+	public List<Row> rows() {
+		return _rows;
+	}
+
+	/**
+	 * @param metric the name of the metric to sort by
+	 * @param descending whether the highest values should come first
+	 * @return the rows of the report sorted by the metric
+	 */
+	public List<Row> sortedBy(String metric, final boolean descending) {
+		final int index = indexOf(metric);
+		List<Row> sorted = new ArrayList<Row>(_rows);
+		Collections.sort(sorted, new Comparator<Row>() {
+			@Override
+			public int compare(Row a, Row b) {
+				int order = Double.compare(a._values[index], b._values[index]);
+				return descending ? -order : order;
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * @param metric the name of the metric to filter by
+	 * @param min the lowest value allowed
+	 * @param max the highest value allowed
+	 * @return the rows whose value of the metric is between min and max
+	 */
+	public List<Row> where(String metric, double min, double max) {
+		int index = indexOf(metric);
+		List<Row> matching = new ArrayList<Row>();
+		for (Row row : _rows) {
+			if (row._values[index] >= min && row._values[index] <= max) {
+				matching.add(row);
+			}
+		}
+		return matching;
+	}
+
+	/**
+	 * @return the first line of a report file
+	 */
+	static String header() {
+		StringBuilder header = new StringBuilder("song");
+		for (String metric : METRICS) {
+			header.append(',').append(metric);
+		}
+		return header.toString();
+	}
+
+	/**
+	 * @param metric the name of a metric
+	 * @return the index of the metric in METRICS
+	 * @throws IllegalArgumentException if there is no such metric
+	 */
+	private static int indexOf(String metric) {
+		int index = METRICS.indexOf(metric);
+		if (index == -1) {
+			throw new IllegalArgumentException("There is no metric called " + metric + ". The metrics are " + METRICS);
+		}
+		return index;
+	}
+
+	/**
+	 * @param line a line of a report file
+	 * @return the row written on that line
+	 * @throws IOException if the line isn't a row
+	 */
+	private static Row parse(String line) throws IOException {
+		String[] fields = line.split(",");
+		if (fields.length < METRICS.size() + 1) {
+			throw new IOException("\"" + line + "\" isn't a row of a chart report");
+		}
+		// the song name is everything before the metrics, in case it has a ',' in it
+		int nameFields = fields.length - METRICS.size();
+		StringBuilder song = new StringBuilder(fields[0]);
+		for (int i = 1; i < nameFields; i++) {
+			song.append(',').append(fields[i]);
+		}
+		double[] values = new double[METRICS.size()];
+		try {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = Double.parseDouble(fields[nameFields + i]);
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("\"" + line + "\" isn't a row of a chart report", e);
+		}
+		return new Row(song.toString(), values);
+	}
+
+	/**
+	 * A Row holds the metrics of one chart
+	 */
+	public static class Row {
+		private final String _song;
+		private final double[] _values;
+
+		/**
+		 * @param song the name of the chart's song
+		 * @param values the value of each metric, in the order of METRICS
+		 */
+		Row(String song, double[] values) {
+			_song = song;
+			_values = values.clone();
+		}
+
+		/**
+		 * @return the name of the chart's song
+		 */
+		public String song() {
+			return _song;
+		}
+
+		/**
+		 * @param metric the name of a metric
+		 * @return the value of that metric for this chart
+		 */
+		public double get(String metric) {
+			return _values[indexOf(metric)];
+		}
+
+		/**
+		 * @return this row as it is written in the report file
+		 */
+		@Override
+		public String toString() {
+			StringBuilder row = new StringBuilder(_song);
+			for (double value : _values) {
+				row.append(',');
+				if (value == Math.rint(value)) {
+					row.append((long) value);
+				} else {
+					row.append(String.format(Locale.ROOT, "%.2f", value));
+				}
+			}
+			return row.toString();
+		}
+	}
+
+	/**
+	 * Prints the charts of a report with the highest values of a metric.
+	 * The arguments are: report [metric] [number of charts]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: ChartReport report [metric] [number of charts]");
+			return;
+		}
+		ChartReport report = load(new File(args[0]));
+		String metric = args.length > 1 ? args[1] : "stamina";
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		System.out.println(header());
+		List<Row> sorted = report.sortedBy(metric, true);
+		for (Row row : sorted.subList(0, Math.min(count, sorted.size()))) {
+			System.out.println(row);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package piu.utilities;
+
+/**
+ * An FFT works out the magnitude spectrum of windows of audio of one fixed size, using an in-place radix-2 transform.
+ * The Hann window, the twiddle factors and the bit reversal are worked out once when it is made, and can be shared;
+ * the arrays the transform is done in belong to each caller, so one FFT can be used by several threads at once
+ * @author AAA
+ */
+class FFT {
+	private final int _size;
+	private final float[] _window;
+	// makes a full scale sine wave come out with a magnitude of about 1, whatever the size
+	private final float _scale;
+	private final float[] _cos;
+	private final float[] _sin;
+	private final int[] _reversed;
+
+	/**
+	 * @param size the number of samples in each window, which must be a power of 2
+	 */
+	FFT(int size) {
+		if (size < 2 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("The size of an FFT has to be a power of 2, not " + size);
+		}
+		_size = size;
+		_window = new float[size];
+		for (int i = 0; i < size; i++) {
+			_window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+		}
+		// the Hann window adds up to half the size
+		_scale = 4f / size;
+		_cos = new float[size / 2];
+		_sin = new float[size / 2];
+		for (int i = 0; i < size / 2; i++) {
+			_cos[i] = (float) Math.cos(-2 * Math.PI * i / size);
+			_sin[i] = (float) Math.sin(-2 * Math.PI * i / size);
+		}
+		_reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; i++) {
+			_reversed[i] = Integer.reverse(i) >>> (Integer.SIZE - bits);
+		}
+	}
+
+	/**
+	 * @return the number of samples in each window
+	 */
+	int size() {
+		return _size;
+	}
+
+	/**
+	 * Works out the magnitude of each frequency bin of one window of samples
+	 * @param samples the samples
+	 * @param from the index of the first sample of the window
+	 * @param re an array of size() floats to do the transform in
+	 * @param im an array of size() floats to do the transform in
+	 * @param magnitudes the array the magnitudes of the size() / 2 + 1 bins from 0 Hz up to the Nyquist frequency are put in,
+	 * scaled so that a full scale sine wave has a magnitude of about 1
+	 */
+	void magnitudes(float[] samples, int from, float[] re, float[] im, float[] magnitudes) {
+		// window the samples, putting them in bit reversed order
+		for (int i = 0; i < _size; i++) {
+			re[_reversed[i]] = samples[from + i] * _window[i];
+			im[i] = 0;
+		}
+		for (int half = 1; half < _size; half <<= 1) {
+			int step = _size / (half * 2);
+			for (int start = 0; start < _size; start += half * 2) {
+				for (int k = 0; k < half; k++) {
+					float c = _cos[k * step];
+					float s = _sin[k * step];
+					int even = start + k;
+					int odd = even + half;
+					float oddRe = re[odd] * c - im[odd] * s;
+					float oddIm = re[odd] * s + im[odd] * c;
+					re[odd] = re[even] - oddRe;
+					im[odd] = im[even] - oddIm;
+					re[even] += oddRe;
+					im[even] += oddIm;
+				}
+			}
+		}
+		for (int i = 0; i <= _size / 2; i++) {
+			magnitudes[i] = (float) Math.sqrt(re[i] * re[i] + im[i] * im[i]) * _scale;
+		}
+	}
+}
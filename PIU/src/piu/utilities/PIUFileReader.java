@@ -1,9 +1,11 @@
 package piu.utilities;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import piu.gameplay.Period;
@@ -21,20 +23,84 @@ public class PIUFileReader {
 	 */
 	private PIUFileReader() {}
 	
+	// the directory holding a directory for every song. This can be changed with the piu.songs system property
+	private static final String SONGS_DIRECTORY = System.getProperty("piu.songs", "/home/aaa/Programs/computer science/compsci230/A2/PIU/songs");
+	
+	/**
+	 * A NoteDataListener is told about each period of a note data file as it is read,
+	 * so that a whole chart never has to be kept in memory
+	 */
+	public interface NoteDataListener {
+		/**
+		 * Called for every period in the file, in the order they are written
+		 * @param column the index of the column the period is in
+		 * @param start the start time of the period
+		 * @param end the end time of the period
+		 */
+		void period(int column, int start, int end);
+		
+		/**
+		 * Called at the '*' which ends each column
+		 * @param column the index of the column which has ended
+		 */
+		void columnEnd(int column);
+	}
+	
 	/**
-	 * digitsToNumber takes a list of digits and returns the number made up of those digits in that order
-	 * For instance, [1, 2, 3] would return 123.
-	 * @param digits a List of the digits of the number
-	 * @return the number made up of those digits
+	 * @return the directory holding a directory for every song
 	 */
-	private static int digitsToNumber(List<Integer> digits) {
-		int output = 0;
-		for (int i = 0; i < digits.size(); i++) {
-			output += digits.get(i) * Math.pow(10, digits.size() - i - 1);
+	public static File songsDirectory() {
+		return new File(SONGS_DIRECTORY);
+	}
+	
+	/**
+	 * @param song the name of the song
+	 * @return the NoteData file of the song
+	 */
+	public static File noteDataFile(String song) {
+		return new File(new File(songsDirectory(), song), song + "NoteData.txt");
+	}
+	
+	/**
+	 * Finds the background art of a song. This is either every image in the song's "background" directory,
+	 * which are the frames of an animation in the order of their names, or a single image called songBackground
+	 * @param song the name of the song
+	 * @return the image files, in order, or an empty list if the song has no background art
+	 */
+	public static List<File> getBackgroundFiles(String song) {
+		List<File> output = new ArrayList<File>();
+		File songDirectory = new File(songsDirectory(), song);
+		File[] frames = new File(songDirectory, "background").listFiles();
+		if (frames != null) {
+			Arrays.sort(frames);
+			for (File frame : frames) {
+				if (isImage(frame)) {
+					output.add(frame);
+				}
+			}
+			return output;
+		}
+		File[] files = songDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (isImage(file) && file.getName().startsWith(song + "Background.")) {
+					output.add(file);
+					break;
+				}
+			}
 		}
 		return output;
 	}
 	
+	/**
+	 * @param file the file to check
+	 * @return whether the file is an image which can be read
+	 */
+	private static boolean isImage(File file) {
+		String name = file.getName().toLowerCase();
+		return file.isFile() && (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".gif") || name.endsWith(".bmp"));
+	}
+	
 	/**
 	 * getNoteData takes a song name as a string and reads its NoteData file, returning the information for use by the Player class
 	 * The files are of format:
@@ -47,65 +113,99 @@ public class PIUFileReader {
 	 * @return output a List<ArrayList<Period>> which contains the note data for each column
 	 */
 	public static List<ArrayList<Period>> getNoteData(String song) {
-		List<ArrayList<Period>> noteData = null;
-		// create a reference to the file which contains this song's note data 
-		File file = new File("/home/aaa/Programs/computer science/compsci230/A2/PIU/songs/" + song, song + "NoteData.txt");
+		return getNoteData(noteDataFile(song));
+	}
+	
+	/**
+	 * getNoteData reads a NoteData file, returning the information for use by the Player class
+	 * @param file the NoteData file
+	 * @return output a List<ArrayList<Period>> which contains the note data for each column
+	 */
+	public static List<ArrayList<Period>> getNoteData(File file) {
+		List<ArrayList<Period>> noteData = new ArrayList<ArrayList<Period>>();
 		try {
-			// set up the output and the FileReader
-			noteData = new ArrayList<ArrayList<Period>>();
-			FileReader inputFile = new FileReader(file);
-			// inputFile.read() returns the character's ASCII value
-			// the first digit is read in
-			int c = inputFile.read();
-			
-			while (c != -1) {
-				ArrayList<Period> columnNotes = new ArrayList<Period>();
-				// this part gets the Periods for every column
-				while ((char) c != '*') {
-					int start;
-					int end;
-					// calculate the first number of this period
-					ArrayList<Integer> digits = new ArrayList<Integer>();
-
-					// get all the digits of the first number. This ends with a ' '
-					// the first digit has already been read into c
-					while ((char) c != ' ') {
-						digits.add(c-48);
-						c = inputFile.read();
-					}
-					// convert the list of digits to a number and store it in "start"
-					start = digitsToNumber(digits);
-					// reset the digits ArrayList
-					digits.clear();
-					
-					c = inputFile.read();
-					// get all the digits of the second number. This ends with a '\n'
-					while ((char) c != '\n') {
-						digits.add(c-48);
-						c = inputFile.read();
-					}
-					// convert the list of digits to a number and store it in "end"
-					end = digitsToNumber(digits);
-					
+			readInto(file, noteData);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return noteData;
+	}
+	
+	/**
+	 * readNoteData reads a whole NoteData file. Unlike getNoteData, nothing is returned unless all of the file could be read
+	 * @param file the NoteData file
+	 * @return a List<ArrayList<Period>> which contains the note data for each column
+	 * @throws IOException if the file can't be read, or isn't in the NoteData format
+	 */
+	public static List<ArrayList<Period>> readNoteData(File file) throws IOException {
+		List<ArrayList<Period>> noteData = new ArrayList<ArrayList<Period>>();
+		readInto(file, noteData);
+		return noteData;
+	}
+	
+	/**
+	 * Reads a NoteData file into a list, which holds whatever could be read even if an exception is thrown
+	 * @param file the NoteData file
+	 * @param noteData the empty list to add a list of periods to for each column
+	 * @throws IOException if the file can't be read, or isn't in the NoteData format
+	 */
+	private static void readInto(File file, final List<ArrayList<Period>> noteData) throws IOException {
+		// set up a list for the first column
+		noteData.add(new ArrayList<Period>());
+		try {
+			readNoteData(file, new NoteDataListener() {
+				@Override
+				public void period(int column, int start, int end) {
 					// add this period to this column's notes
-					columnNotes.add(new Period(start, end));
-					// read in the first digit of the next line
-					// if it's a '*' it'll break out of this loop
-					c = inputFile.read();
+					noteData.get(column).add(new Period(start, end));
 				}
 				
-				noteData.add(columnNotes);
-				// throw away the '\n' after the '*'
-				inputFile.read();
-				// get the first digit of the next number.
-				// if this fails, the end of file is reached, c = -1, this loop is broken and the function returns
-				c = inputFile.read();
-
+				@Override
+				public void columnEnd(int column) {
+					noteData.add(new ArrayList<Period>());
+				}
+			});
+		} finally {
+			// the list made after the last '*' has no column
+			if (noteData.get(noteData.size() - 1).isEmpty()) {
+				noteData.remove(noteData.size() - 1);
+			}
+		}
+	}
+	
+	/**
+	 * readNoteData reads a NoteData file one line at a time, telling the listener about each period and the end of each column.
+	 * Only one line is kept in memory at a time, so this can be used on charts of any length
+	 * @param file the NoteData file
+	 * @param listener the listener which is told about the contents of the file
+	 * @throws IOException if the file can't be read, or isn't in the NoteData format
+	 */
+	public static void readNoteData(File file, NoteDataListener listener) throws IOException {
+		BufferedReader inputFile = new BufferedReader(new FileReader(file));
+		try {
+			int column = 0;
+			int lineNumber = 0;
+			String line;
+			while ((line = inputFile.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				if (line.equals("*")) {
+					listener.columnEnd(column);
+					column++;
+					continue;
+				}
+				// each other line is the start and end of a period, separated by a ' '
+				int space = line.indexOf(' ');
+				try {
+					listener.period(column, Integer.parseInt(line.substring(0, space)), Integer.parseInt(line.substring(space + 1)));
+				} catch (RuntimeException e) {
+					throw new IOException("Line " + lineNumber + " of " + file + " isn't a period: \"" + line + "\"", e);
+				}
 			}
+		} finally {
 			inputFile.close();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
-		return noteData;
 	}
 }
@@ -0,0 +1,107 @@
+package piu.utilities;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import piu.gameplay.Period;
+
+/**
+ * A PIUFileWriter writes a NoteData file in the format read by PIUFileReader, one period at a time,
+ * so that charts of any length can be written without keeping them in memory.
+ * It is a NoteDataListener, so a file being read can be written straight back out
+ * @author AAA
+ */
+public class PIUFileWriter implements PIUFileReader.NoteDataListener, Closeable {
+	private final File _file;
+	private final PrintWriter _output;
+	// the column which is being written
+	private int _column = 0;
+
+	/**
+	 * Creates the NoteData file, and the directories it is in if they don't exist yet
+	 * @param file the NoteData file
+	 * @throws IOException if the file can't be created
+	 */
+	public PIUFileWriter(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create the directory " + directory);
+		}
+		_file = file;
+		_output = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+	}
+
+	/**
+	 * Writes every column of a chart to a NoteData file
+	 * @param file the NoteData file
+	 * @param noteData the note data, one list for each column
+	 * @throws IOException if the file can't be written
+	 */
+	public static void writeNoteData(File file, List<? extends List<Period>> noteData) throws IOException {
+		PIUFileWriter writer = new PIUFileWriter(file);
+		try {
+			for (int column = 0; column < noteData.size(); column++) {
+				for (Period p : noteData.get(column)) {
+					writer.period(column, p.start(), p.end());
+				}
+				writer.columnEnd(column);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes a period. The columns have to be written in order, each one ended by columnEnd()
+	 * @param column the index of the column the period is in, which must be the column being written
+	 * @param start the start time of the period
+	 * @param end the end time of the period
+	 */
+	@Override
+	public void period(int column, int start, int end) {
+		if (column != _column) {
+			throw new IllegalStateException("Column " + _column + " is being written, not column " + column);
+		}
+		_output.print(start);
+		_output.print(' ');
+		_output.print(end);
+		_output.print('\n');
+	}
+
+	/**
+	 * Writes the '*' which ends a column
+	 * @param column the index of the column, which must be the column being written
+	 */
+	@Override
+	public void columnEnd(int column) {
+		if (column != _column) {
+			throw new IllegalStateException("Column " + _column + " is being written, not column " + column);
+		}
+		_output.print("*\n");
+		_column++;
+	}
+
+	/**
+	 * @return the number of columns which have been ended
+	 */
+	public int columns() {
+		return _column;
+	}
+
+	/**
+	 * Closes the file
+	 * @throws IOException if anything couldn't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		_output.close();
+		if (_output.checkError()) {
+			throw new IOException("Couldn't write " + _file);
+		}
+	}
+}
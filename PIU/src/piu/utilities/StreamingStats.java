@@ -0,0 +1,136 @@
+package piu.utilities;
+
+import java.util.Arrays;
+
+/**
+ * StreamingStats keeps the mean, variance and an estimate of the median of a stream of numbers, using a fixed amount of memory
+ * however many numbers are added. The mean and variance use Welford's method, and the median uses the P-squared algorithm
+ * (Jain and Chlamtac, 1985), which moves five markers towards the minimum, quartiles, median and maximum as numbers arrive
+ * @author AAA
+ */
+public class StreamingStats {
+	private long _count = 0;
+	private double _mean = 0;
+	// the sum of the squared differences from the mean
+	private double _m2 = 0;
+
+	// the heights and positions of the five P-squared markers, the positions they should be at, and how far those move per number
+	private final double[] _heights = new double[5];
+	private final double[] _positions = { 1, 2, 3, 4, 5 };
+	private final double[] _desired = { 1, 2, 3, 4, 5 };
+	private static final double[] INCREMENTS = { 0, 0.25, 0.5, 0.75, 1 };
+
+	/**
+	 * Adds a number to the stream
+	 * @param x the number
+	 */
+	public void add(double x) {
+		_count++;
+		double delta = x - _mean;
+		_mean += delta / _count;
+		_m2 += delta * (x - _mean);
+
+		if (_count <= 5) {
+			// the first five numbers are the starting markers
+			_heights[(int) _count - 1] = x;
+			if (_count == 5) {
+				Arrays.sort(_heights);
+			}
+			return;
+		}
+
+		// find the cell which x falls in, stretching the ends if it is outside them
+		int cell;
+		if (x < _heights[0]) {
+			_heights[0] = x;
+			cell = 0;
+		} else if (x >= _heights[4]) {
+			_heights[4] = x;
+			cell = 3;
+		} else {
+			cell = 0;
+			while (x >= _heights[cell + 1]) {
+				cell++;
+			}
+		}
+		for (int i = cell + 1; i < 5; i++) {
+			_positions[i]++;
+		}
+		for (int i = 0; i < 5; i++) {
+			_desired[i] += INCREMENTS[i];
+		}
+
+		// move the middle markers one position towards where they should be, if they are at least one position away
+		for (int i = 1; i < 4; i++) {
+			double d = _desired[i] - _positions[i];
+			if ((d >= 1 && _positions[i + 1] - _positions[i] > 1) || (d <= -1 && _positions[i - 1] - _positions[i] < -1)) {
+				int step = d > 0 ? 1 : -1;
+				double height = parabolic(i, step);
+				if (height <= _heights[i - 1] || height >= _heights[i + 1]) {
+					height = _heights[i] + step * (_heights[i + step] - _heights[i]) / (_positions[i + step] - _positions[i]);
+				}
+				_heights[i] = height;
+				_positions[i] += step;
+			}
+		}
+	}
+
+	/**
+	 * @return the new height of marker i if it moves by step, using the piecewise-parabolic formula
+	 */
+	private double parabolic(int i, int step) {
+		double below = _positions[i] - _positions[i - 1];
+		double above = _positions[i + 1] - _positions[i];
+		return _heights[i] + step / (_positions[i + 1] - _positions[i - 1])
+				* ((below + step) * (_heights[i + 1] - _heights[i]) / above
+				+ (above - step) * (_heights[i] - _heights[i - 1]) / below);
+	}
+
+	/**
+	 * @return how many numbers have been added
+	 */
+	public long count() {
+		return _count;
+	}
+
+	/**
+	 * @return the mean of the numbers, or 0 if there aren't any
+	 */
+	public double mean() {
+		return _mean;
+	}
+
+	/**
+	 * @return the sample variance of the numbers, or 0 if there are fewer than two
+	 */
+	public double variance() {
+		return _count < 2 ? 0 : _m2 / (_count - 1);
+	}
+
+	/**
+	 * @return the sample standard deviation of the numbers
+	 */
+	public double standardDeviation() {
+		return Math.sqrt(variance());
+	}
+
+	/**
+	 * @return an estimate of the median of the numbers, which is exact for up to five numbers, or 0 if there aren't any
+	 */
+	public double median() {
+		if (_count == 0) {
+			return 0;
+		}
+		if (_count < 5) {
+			double[] first = Arrays.copyOf(_heights, (int) _count);
+			Arrays.sort(first);
+			return first.length % 2 == 1 ? first[first.length / 2] : (first[first.length / 2 - 1] + first[first.length / 2]) / 2;
+		}
+		return _heights[2];
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.1f median=%.1f sd=%.1f", _count, mean(), median(), standardDeviation());
+	}
+}
@@ -0,0 +1,141 @@
+package piu.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The StressChartGenerator makes synthetic charts for testing how the game copes with charts far bigger than any real song:
+ * many columns, many notes per second, long holds and millions of notes. Each column's arrows arrive at random, independently
+ * of the other columns, at an average rate which adds up to the notes per second asked for. The chart is streamed straight
+ * to a PIUFileWriter one column at a time, so only one period is ever in memory however big the chart is.
+ * The same settings and seed always make the same chart
+ * @author AAA
+ */
+public class StressChartGenerator {
+	// the most columns a chart can have, one for each of GameView's input characters
+	public static final int MAX_COLUMNS = 71;
+
+	// the time before the first arrow, in ms
+	private static final int LEAD_IN = 2000;
+
+	// the shortest gap between the end of one period and the start of the next in the same column, and the length of a tick, in ms
+	private static final int TICK = 20;
+
+	// the shortest hold, in ms
+	private static final int MIN_HOLD_LENGTH = 100;
+
+	private final int _numCols;
+	private double _notesPerSecond = 20;
+	private double _holdRatio = 0.1;
+	private int _maxHoldLength = 2000;
+	private long _seed = 0;
+
+	/**
+	 * Creates a new StressChartGenerator, which makes 20 notes per second with one in ten being a hold of up to 2 seconds
+	 * @param numCols the number of columns, from 1 to MAX_COLUMNS
+	 */
+	public StressChartGenerator(int numCols) {
+		if (numCols < 1 || numCols > MAX_COLUMNS) {
+			throw new IllegalArgumentException("A chart can have from 1 to " + MAX_COLUMNS + " columns, not " + numCols);
+		}
+		_numCols = numCols;
+	}
+
+	/**
+	 * @param notesPerSecond the average number of arrows per second, across all the columns
+	 */
+	public void setNotesPerSecond(double notesPerSecond) {
+		if (notesPerSecond <= 0) {
+			throw new IllegalArgumentException("The notes per second has to be positive");
+		}
+		_notesPerSecond = notesPerSecond;
+	}
+
+	/**
+	 * @param holdRatio the fraction of the arrows which are holds, from 0 to 1
+	 */
+	public void setHoldRatio(double holdRatio) {
+		_holdRatio = Math.max(0, Math.min(1, holdRatio));
+	}
+
+	/**
+	 * @param maxHoldLength the longest hold, in ms. Holds are evenly spread between MIN_HOLD_LENGTH and this
+	 */
+	public void setMaxHoldLength(int maxHoldLength) {
+		_maxHoldLength = Math.max(MIN_HOLD_LENGTH, maxHoldLength);
+	}
+
+	/**
+	 * @param seed the seed of the random numbers, so that a chart can be made again
+	 */
+	public void setSeed(long seed) {
+		_seed = seed;
+	}
+
+	/**
+	 * Writes a chart
+	 * @param file the NoteData file to write
+	 * @param length the length of the chart, in ms
+	 * @return the number of periods written
+	 * @throws IOException if the file can't be written
+	 */
+	public long generate(File file, int length) throws IOException {
+		// the average time between the starts of arrows in one column
+		double meanGap = _numCols * 1000 / _notesPerSecond;
+		long periods = 0;
+		PIUFileWriter writer = new PIUFileWriter(file);
+		try {
+			for (int column = 0; column < _numCols; column++) {
+				// each column has its own random numbers, so a column is the same whatever the number of columns
+				Random random = new Random(_seed * 1000003 + column);
+				double time = LEAD_IN + random.nextDouble() * meanGap;
+				while (time < length) {
+					int start = (int) time;
+					int end = start + 1;
+					if (random.nextDouble() < _holdRatio) {
+						int hold = MIN_HOLD_LENGTH + random.nextInt(_maxHoldLength - MIN_HOLD_LENGTH + 1);
+						end = start + hold / TICK * TICK;
+					}
+					writer.period(column, start, end);
+					periods++;
+					// the gaps between arrows are exponentially distributed, as they are for events which happen at random
+					time = Math.max(end + TICK, time - Math.log(1 - random.nextDouble()) * meanGap);
+				}
+				writer.columnEnd(column);
+			}
+		} finally {
+			writer.close();
+		}
+		return periods;
+	}
+
+	/**
+	 * Writes a synthetic chart as a song's NoteData file.
+	 * The arguments are: song name, [columns] [notes per second] [length in seconds] [hold ratio] [longest hold in ms] [seed]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: StressChartGenerator <song> [columns] [notes per second] [length s] [hold ratio] [longest hold ms] [seed]");
+			return;
+		}
+		StressChartGenerator generator = new StressChartGenerator(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		if (args.length > 2) {
+			generator.setNotesPerSecond(Double.parseDouble(args[2]));
+		}
+		int length = (args.length > 3 ? Integer.parseInt(args[3]) : 600) * 1000;
+		if (args.length > 4) {
+			generator.setHoldRatio(Double.parseDouble(args[4]));
+		}
+		if (args.length > 5) {
+			generator.setMaxHoldLength(Integer.parseInt(args[5]));
+		}
+		if (args.length > 6) {
+			generator.setSeed(Long.parseLong(args[6]));
+		}
+		File output = PIUFileReader.noteDataFile(args[0]);
+		long startTime = System.nanoTime();
+		long periods = generator.generate(output, length);
+		System.out.println("Wrote " + periods + " periods to " + output + " in " + (System.nanoTime() - startTime) / 1000000 + "ms");
+	}
+}
@@ -0,0 +1,55 @@
+package piu.utilities;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the methods for making the thread pools used by the game and its tools.
+ * The threads are all daemon threads, so a pool which is never shut down won't stop the program from exiting
+ * All methods are static; this will never be instantiated
+ * @author AAA
+ */
+public class WorkerPool {
+	/**
+	 * The constructor is private and does nothing. It will never be called,
+	 * to ensure that this class is never instantiated
+	 */
+	private WorkerPool() {}
+
+	/**
+	 * @return the number of cores available to the program
+	 */
+	public static int cores() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Makes a new pool with one thread for every core
+	 * @param name the name given to the threads, followed by their number
+	 * @return the new pool
+	 */
+	public static ExecutorService newPool(String name) {
+		return newPool(name, cores());
+	}
+
+	/**
+	 * Makes a new pool with a fixed number of threads
+	 * @param name the name given to the threads, followed by their number
+	 * @param threads the number of threads in the pool
+	 * @return the new pool
+	 */
+	public static ExecutorService newPool(final String name, int threads) {
+		return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			private final AtomicInteger _count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + _count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}